@@ -25,6 +25,9 @@ public class Error {
     private Integer status;
     private String message;
 
+    public Error() {
+    }
+
     public Error(Integer status, String message) {
         this.status = status;
         this.message = message;
@@ -1,11 +1,13 @@
 package com.rpc.demo.model;
 
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 /**
  * @author lw
  */
 @Data
+@NoArgsConstructor
 public class Order {
 
     private Integer id;
@@ -0,0 +1,26 @@
+package com.rpc.demo.service;
+
+
+import com.rpc.demo.model.Order;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * OrderService 的异步视图：方法与 OrderService 一一对应，返回 CompletableFuture
+ * @author lw
+ */
+public interface OrderServiceAsync {
+
+    /**
+     * find by id
+     * @param id id
+     * @return order future
+     */
+    CompletableFuture<Order> findById(Integer id);
+
+    /**
+     * return exception
+     * @return exception future
+     */
+    CompletableFuture<Order> findError();
+}
@@ -0,0 +1,20 @@
+package com.rpc.demo.service;
+
+
+import com.rpc.demo.model.User;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * UserService 的异步视图：方法与 UserService 一一对应，返回 CompletableFuture
+ * @author lw
+ */
+public interface UserServiceAsync {
+
+    /**
+     * find by id
+     * @param id id
+     * @return user future
+     */
+    CompletableFuture<User> findById(Integer id);
+}
@@ -17,33 +17,39 @@
 
 package com.rpc.client.demo;
 
-import com.alibaba.fastjson.parser.ParserConfig;
+import com.rpc.core.demo.annotation.GenerateStubs;
 import com.rpc.core.demo.balance.loadbalance.ConsistentHashBalance;
+import com.rpc.core.demo.filter.client.ClientConcurrency;
+import com.rpc.core.demo.filter.client.Hedge;
 import com.rpc.core.demo.filter.client.Retry;
 import com.rpc.core.demo.proxy.RpcClient;
 import com.rpc.demo.model.Order;
 import com.rpc.demo.model.User;
 import com.rpc.demo.service.OrderService;
+import com.rpc.demo.service.OrderServiceAsync;
 import com.rpc.demo.service.UserService;
+import com.rpc.demo.service.UserServiceAsync;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author lw1243925457
  */
 @Slf4j
+@GenerateStubs({UserService.class, OrderService.class, UserServiceAsync.class, OrderServiceAsync.class})
 public class ClientApplication {
 
     public static void main(String[] args) {
-        // fastjson auto setting
-        ParserConfig.getGlobalInstance().addAccept("com.rpc.demo.model.Order");
-        ParserConfig.getGlobalInstance().addAccept("com.rpc.demo.model.User");
-
         // set retry time
         Retry.setRetryLimit(3);
+        // 幂等方法：慢的时候向另一个 Provider 发送对冲请求
+        Hedge.addIdempotentMethod(UserService.class.getName(), "findById");
+        // 每个 Provider 地址的在途请求限制，全部达到限制时调用直接失败
+        ClientConcurrency.setInitialLimit(100);
 
         RpcClient client = new RpcClient();
         RpcClient.setBalanceAlgorithmName(ConsistentHashBalance.NAME);
@@ -90,5 +96,23 @@ public class ClientApplication {
         for (User item: userList) {
             System.out.println(item);
         }
+
+        // test async: 同时请求 UserService 和 OrderService，不阻塞调用线程
+        System.out.println("\n=============== test async =======================\n");
+        UserServiceAsync userServiceAsync = client.createAsync(UserServiceAsync.class, UserService.class);
+        OrderServiceAsync orderServiceAsync = client.createAsync(OrderServiceAsync.class, OrderService.class);
+        CompletableFuture<User> userFuture = userServiceAsync.findById(1);
+        CompletableFuture<Order> orderFuture = orderServiceAsync.findById(1992129);
+        userFuture.thenCombine(orderFuture, (asyncUser, asyncOrder) ->
+                String.format("async user=%s, order=%s", asyncUser.getName(), asyncOrder.getName()))
+                .handle((message, throwable) -> {
+                    if (throwable != null) {
+                        log.info("Clint async service invoke Error");
+                    } else {
+                        System.out.println("\n\n" + message);
+                    }
+                    return message;
+                })
+                .join();
     }
 }
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.client.demo;
+
+import com.alibaba.fastjson.util.ParameterizedTypeImpl;
+import com.rpc.core.demo.api.RpcRequest;
+import com.rpc.core.demo.api.RpcResponse;
+import com.rpc.core.demo.netty.common.BinarySerializer;
+import com.rpc.core.demo.netty.common.JsonSerializer;
+import com.rpc.core.demo.netty.common.Serializer;
+import com.rpc.core.demo.netty.common.Serializers;
+import com.rpc.demo.model.Order;
+import com.rpc.demo.model.User;
+import com.rpc.demo.service.UserService;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 序列化方式对比：在 demo 的 User、Order 模型上比较各序列化方式的数据大小和序列化 + 反序列化耗时
+ * 和 netty 编解码时一样，直接写入、读取池化的 direct ByteBuf
+ *
+ * @author lw1243925457
+ */
+public class SerializerBenchmark {
+
+    private static final int WARMUP = 50_000;
+    private static final int ITERATIONS = 200_000;
+
+    public static void main(String[] args) {
+        // 二进制序列化只创建白名单中的类，这里没有经过服务注册，直接登记
+        BinarySerializer.allowType(User.class);
+        BinarySerializer.allowType(Order.class);
+
+        RpcRequest request = new RpcRequest();
+        request.setServiceClass(UserService.class.getName());
+        request.setMethod("findById");
+        request.setArgv(new Object[]{1});
+        request.setGroup("group2");
+        request.setVersion("v2");
+
+        RpcResponse<User> userResponse = new RpcResponse<>();
+        userResponse.setStatus(true);
+        userResponse.setResult(new User(1, "user1"));
+
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            orders.add(new Order(1992129 + i, "Apple-" + i, 1));
+        }
+        RpcResponse<List<Order>> ordersResponse = new RpcResponse<>();
+        ordersResponse.setStatus(true);
+        ordersResponse.setResult(orders);
+
+        Type userResponseType = new ParameterizedTypeImpl(new Type[]{User.class}, null, RpcResponse.class);
+        Type ordersResponseType = new ParameterizedTypeImpl(
+                new Type[]{new ParameterizedTypeImpl(new Type[]{Order.class}, null, List.class)}, null, RpcResponse.class);
+
+        for (String name: new String[]{JsonSerializer.NAME, BinarySerializer.NAME}) {
+            Serializer serializer = Serializers.get(name);
+            run(serializer, "request", request, RpcRequest.class);
+            run(serializer, "user response", userResponse, userResponseType);
+            run(serializer, "20 orders response", ordersResponse, ordersResponseType);
+        }
+    }
+
+    private static void run(Serializer serializer, String caseName, Object object, Type type) {
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer(1024);
+        try {
+            for (int i = 0; i < WARMUP; i++) {
+                roundTrip(serializer, object, type, buf);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                roundTrip(serializer, object, type, buf);
+            }
+            long cost = System.nanoTime() - start;
+
+            buf.clear();
+            serializer.serialize(object, buf);
+            System.out.printf("%-8s %-20s %6d bytes %10.1f ns/op%n", serializer.getName(), caseName,
+                    buf.readableBytes(), (double) cost / ITERATIONS);
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static Object roundTrip(Serializer serializer, Object object, Type type, ByteBuf buf) {
+        buf.clear();
+        serializer.serialize(object, buf);
+        return serializer.deserialize(buf, type);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.annotation;
+
+/**
+ * 服务端 Provider 方法的执行方式
+ *
+ * @author lw1243925457
+ */
+public enum DispatchMode {
+
+    /**
+     * 在有界的业务线程池中执行，适合 CPU 型的短调用
+     */
+    POOL,
+
+    /**
+     * 每个请求一个线程：JDK 21 及以上使用虚拟线程，低版本退回到可伸缩的缓存线程池
+     * 适合会阻塞在 JDBC、下游 RPC 等 IO 上的 Provider，不用为了并发度配置很大的线程池
+     */
+    THREAD_PER_REQUEST
+}
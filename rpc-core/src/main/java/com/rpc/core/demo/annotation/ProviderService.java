@@ -60,7 +60,37 @@ public @interface ProviderService {
 
     /**
      * 权重：用于加权负载均衡
-     * @return
+     * @return weight
      */
     int weight() default 1;
+
+    /**
+     * 服务端执行方式：业务线程池 或者 每个请求一个（虚拟）线程
+     * @return dispatch mode
+     */
+    DispatchMode dispatch() default DispatchMode.POOL;
+
+    /**
+     * 服务额外接受的序列化方式（如 binary），json 总是接受
+     * 为空时只接受 json 和全局默认的序列化方式
+     * @return serializer name
+     */
+    String serializer() default "";
+
+    /**
+     * 自适应并发限制的初始值，0 表示不限制
+     * 服务的所有方法共用一个限制，根据请求延迟在 [minConcurrency, maxConcurrency] 之间调整，超过限制的请求直接返回过载
+     * @return initial concurrency limit
+     */
+    int initialConcurrency() default 0;
+
+    /**
+     * @return 自适应并发限制的最小值
+     */
+    int minConcurrency() default 4;
+
+    /**
+     * @return 自适应并发限制的最大值
+     */
+    int maxConcurrency() default 1000;
 }
@@ -17,8 +17,15 @@
 
 package com.rpc.core.demo.api;
 
+import com.rpc.core.demo.netty.common.NettyTransport;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 
+import java.net.SocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.List;
 
 /**
@@ -48,6 +55,17 @@ public class ProviderInfo {
      */
     Integer weight;
 
+    /**
+     * 客户端缓存：解析好的连接地址和连接池key，第一次使用时根据 url 生成，不参与注册和序列化
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient volatile SocketAddress socketAddress;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient volatile String endpointKey;
+
     public ProviderInfo() {}
 
     public ProviderInfo(String id, String url, List<String> tags, int weight) {
@@ -56,4 +74,42 @@ public class ProviderInfo {
         this.tags = tags;
         this.weight = weight;
     }
+
+    public void setUrl(String url) {
+        this.url = url;
+        this.socketAddress = null;
+        this.endpointKey = null;
+    }
+
+    /**
+     * @return 解析好的连接地址
+     */
+    public SocketAddress socketAddress() {
+        SocketAddress address = socketAddress;
+        if (address == null) {
+            address = NettyTransport.toResolvedSocketAddress(uri());
+            socketAddress = address;
+        }
+        return address;
+    }
+
+    /**
+     * @return 连接池的key
+     */
+    public String endpointKey() {
+        String key = endpointKey;
+        if (key == null) {
+            key = NettyTransport.endpointKey(uri());
+            endpointKey = key;
+        }
+        return key;
+    }
+
+    private URI uri() {
+        try {
+            return new URI(url);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Illegal provider url: " + url, e);
+        }
+    }
 }
@@ -1,6 +1,9 @@
 package com.rpc.core.demo.api;
 
+import com.rpc.core.demo.proxy.ProviderInvoker;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 
 /**
  * Rpc 自定义请求结构
@@ -25,7 +28,31 @@ public class RpcRequest {
      */
     private Object[] argv;
 
+    /**
+     * 参数类型名称，服务端据此区分重载方法，为空时只按方法名匹配
+     */
+    private String[] parameterTypes;
+
     private String group;
 
     private String version;
+
+    /**
+     * 客户端缓存的方法key，不参与序列化
+     */
+    @Getter(AccessLevel.NONE)
+    private transient String methodKey;
+
+    /**
+     * 方法key：service:group:version#method(paramType,paramType)，握手时服务端下发的方法目录以此为key
+     * 客户端代理会直接设置预先生成的方法key，没有设置时才拼接
+     * @return method key
+     */
+    public String methodKey() {
+        if (methodKey == null) {
+            methodKey = serviceClass + ":" + (group == null ? "default" : group) + ":"
+                    + (version == null ? "default" : version) + "#" + ProviderInvoker.signature(method, parameterTypes);
+        }
+        return methodKey;
+    }
 }
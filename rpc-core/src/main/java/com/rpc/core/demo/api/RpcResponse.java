@@ -4,15 +4,16 @@ import lombok.Data;
 
 /**
  * Rpc 自定义响应结果
+ * 结果对象直接作为响应的一部分序列化一次，客户端按调用方法的返回类型反序列化
  * @author lw
  */
 @Data
-public class RpcResponse {
+public class RpcResponse<T> {
 
     /**
      * 响应结果
      */
-    private Object result;
+    private T result;
 
     /**
      * 函数是否执行成功
@@ -27,11 +27,11 @@ import java.util.List;
 public interface LoadBalance {
 
     /**
-     * 从当前Provider列表中，通过负载均衡，返回其中一个Provider的请求地址
+     * 从当前Provider列表中，通过负载均衡，返回其中一个Provider
      * @param providers provider list
      * @param serviceName service name
      * @param methodName method name
-     * @return provider host url
+     * @return provider
      */
-    String select(List<ProviderInfo> providers, String serviceName, String methodName);
+    ProviderInfo select(List<ProviderInfo> providers, String serviceName, String methodName);
 }
@@ -35,7 +35,7 @@ public class ConsistentHashBalance extends AbstractLoadBalance {
     private final ConcurrentMap<String, ConsistentHashSelector> selectors = new ConcurrentHashMap<>();
 
     @Override
-    public String select(List<ProviderInfo> providers, String serviceName, String methodName) {
+    public ProviderInfo select(List<ProviderInfo> providers, String serviceName, String methodName) {
         String key = serviceName + "." + methodName;
         int providersHashCode = providers.hashCode();
 
@@ -29,7 +29,7 @@ import java.util.TreeMap;
  */
 class ConsistentHashSelector {
 
-    private final TreeMap<Long, String> virtualInvokers;
+    private final TreeMap<Long, ProviderInfo> virtualInvokers;
     private final int identityHashCode;
 
     ConsistentHashSelector(List<ProviderInfo> providers, int providersHashCode) {
@@ -43,7 +43,7 @@ class ConsistentHashSelector {
                 byte[] digest = (address + i).getBytes();
                 for (int h = 0; h < 4; h++) {
                     long m = hash(digest, h);
-                    virtualInvokers.put(m, provider.getUrl());
+                    virtualInvokers.put(m, provider);
                 }
             }
         }
@@ -53,7 +53,7 @@ class ConsistentHashSelector {
         return identityHashCode;
     }
 
-    String select(String key) {
+    ProviderInfo select(String key) {
         byte[] digest = key.getBytes();
         return virtualInvokers.ceilingEntry(hash(digest, 0)).getValue();
     }
@@ -20,7 +20,7 @@ package com.rpc.core.demo.balance.loadbalance;
 import com.rpc.core.demo.api.ProviderInfo;
 
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * 加权负载均衡
@@ -32,20 +32,20 @@ public class WeightBalance extends AbstractLoadBalance {
     public static final String NAME = "weight_balance";
 
     @Override
-    public String select(List<ProviderInfo> providers, String serviceName, String methodName) {
+    public ProviderInfo select(List<ProviderInfo> providers, String serviceName, String methodName) {
         int totalWeight = 0;
         for (ProviderInfo provider: providers) {
             totalWeight += provider.getWeight();
         }
 
-        int random = new Random().nextInt(totalWeight);
+        int random = ThreadLocalRandom.current().nextInt(totalWeight);
         System.out.printf("provider amount: %s, random : %d\n", providers.size(), random);
         for (ProviderInfo provider: providers) {
             random -= provider.getWeight();
             if (random <= 0) {
-                return provider.getUrl();
+                return provider;
             }
         }
-        return providers.get(providers.size() - 1).getUrl();
+        return providers.get(providers.size() - 1);
     }
 }
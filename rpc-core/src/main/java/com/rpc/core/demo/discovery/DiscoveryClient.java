@@ -25,6 +25,7 @@ import com.rpc.core.demo.balance.LoadBalance;
 import com.rpc.core.demo.balance.loadbalance.ConsistentHashBalance;
 import com.rpc.core.demo.balance.loadbalance.WeightBalance;
 import com.rpc.core.demo.filter.client.FilterLine;
+import com.rpc.core.demo.netty.common.NettyTransport;
 import com.rpc.core.demo.proxy.RpcClient;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.curator.framework.recipes.cache.ChildData;
@@ -34,8 +35,11 @@ import org.apache.curator.x.discovery.ServiceDiscovery;
 import org.apache.curator.x.discovery.ServiceDiscoveryBuilder;
 import org.apache.curator.x.discovery.ServiceInstance;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 服务发现客户端
@@ -70,8 +74,9 @@ public class DiscoveryClient extends ZookeeperClient {
     /**
      * Provider缓存列表
      * server:group:version -> provider instance list
+     * 列表是不可变的快照，更新时生成新列表整体替换（copy-on-write），调用方可以按列表引用缓存过滤结果
      */
-    private Map<String, List<ProviderInfo>> providersCache = new HashMap<>();
+    private final Map<String, List<ProviderInfo>> providersCache = new ConcurrentHashMap<>();
 
     private final ServiceDiscovery<ProviderInfo> serviceDiscovery;
 
@@ -79,7 +84,18 @@ public class DiscoveryClient extends ZookeeperClient {
 
     private LoadBalance balance = new WeightBalance();
 
+    /**
+     * 本机地址，和 Provider 注册时使用的地址一致，用于判断 Provider 是否在同一台机器上
+     */
+    private String localAddress;
+
     private DiscoveryClient() {
+        try {
+            localAddress = InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            e.printStackTrace();
+        }
+
         serviceDiscovery = ServiceDiscoveryBuilder.builder(ProviderInfo.class)
                 .client(client)
                 .basePath("/" + REGISTER_ROOT_PATH)
@@ -124,14 +140,11 @@ public class DiscoveryClient extends ZookeeperClient {
             for ( ServiceInstance<ProviderInfo> instance : instances ) {
                 System.out.println(instance.toString());
 
-                String url = "http://" + instance.getAddress() + ":" + instance.getPort();
                 ProviderInfo providerInfo = instance.getPayload();
                 providerInfo.setId(instance.getId());
-                providerInfo.setUrl(url);
+                providerInfo.setUrl(providerUrl(instance.getAddress(), instance.getPort(), providerInfo));
 
-                List<ProviderInfo> providerList = providersCache.getOrDefault(instance.getName(), new ArrayList<>());
-                providerList.add(providerInfo);
-                providersCache.put(instance.getName(), providerList);
+                putProvider(instance.getName(), providerInfo);
 
                 System.out.println("add provider: " + instance.toString());
             }
@@ -156,15 +169,43 @@ public class DiscoveryClient extends ZookeeperClient {
      */
     public String getProviders(String service, String group, String version, List<String> tags, String methodName) {
         String provider = Joiner.on(":").join(service, group, version);
-        if (!providersCache.containsKey(provider) || providersCache.get(provider).isEmpty()) {
+        List<ProviderInfo> providers = getProviderList(provider);
+        if (providers.isEmpty()) {
             return null;
         }
 
-        List<ProviderInfo> providers = FilterLine.filter(providersCache.get(provider), tags);
+        providers = FilterLine.filter(provider, providers, tags);
         if (providers.isEmpty()) {
             return null;
         }
 
+        return balance.select(providers, service, methodName).getUrl();
+    }
+
+    /**
+     * 返回 Provider 列表的当前快照，列表不可修改，Provider 变化时会被整体替换
+     * @param provider service:group:version
+     * @return provider list
+     */
+    public List<ProviderInfo> getProviderList(String provider) {
+        return providersCache.getOrDefault(provider, Collections.emptyList());
+    }
+
+    /**
+     * @return 当前缓存的所有 service:group:version
+     */
+    public Set<String> getProviderKeys() {
+        return Collections.unmodifiableSet(providersCache.keySet());
+    }
+
+    /**
+     * 对已经过滤好的 Provider 列表进行负载均衡
+     * @param providers provider list, not empty
+     * @param service service name
+     * @param methodName method name
+     * @return provider
+     */
+    public ProviderInfo select(List<ProviderInfo> providers, String service, String methodName) {
         return balance.select(providers, service, methodName);
     }
 
@@ -224,14 +265,61 @@ public class DiscoveryClient extends ZookeeperClient {
         JSONObject instance = (JSONObject) JSONObject.parse(jsonValue);
         System.out.println(instance.toString());
 
-        String url = "http://" + instance.get("address") + ":" + instance.get("port");
         ProviderInfo providerInfo = JSON.parseObject(instance.get("payload").toString(), ProviderInfo.class);
         providerInfo.setId(instance.get("id").toString());
-        providerInfo.setUrl(url);
+        providerInfo.setUrl(providerUrl(instance.get("address").toString(), instance.getInteger("port"), providerInfo));
+
+        putProvider(instance.get("name").toString(), providerInfo);
+    }
+
+    /**
+     * 增加或替换（同一个ID）Provider，生成新的列表快照
+     * @param provider service:group:version
+     * @param providerInfo provider
+     */
+    private void putProvider(String provider, ProviderInfo providerInfo) {
+        providersCache.compute(provider, (key, current) -> {
+            List<ProviderInfo> providerList = new ArrayList<>();
+            if (current != null) {
+                for (ProviderInfo info: current) {
+                    if (!info.getId().equals(providerInfo.getId())) {
+                        providerList.add(info);
+                    }
+                }
+            }
+            providerList.add(providerInfo);
+            return Collections.unmodifiableList(providerList);
+        });
+    }
+
+    /**
+     * 删除Provider，生成新的列表快照
+     * @param provider service:group:version
+     * @param id provider id
+     */
+    private void removeProvider(String provider, String id) {
+        providersCache.computeIfPresent(provider, (key, current) -> {
+            List<ProviderInfo> providerList = new ArrayList<>(current);
+            providerList.removeIf(info -> info.getId().equals(id));
+            return Collections.unmodifiableList(providerList);
+        });
+    }
 
-        List<ProviderInfo> providerList = providersCache.getOrDefault(instance.get("name").toString(), new ArrayList<>());
-        providerList.add(providerInfo);
-        providersCache.put(instance.get("name").toString(), providerList);
+    /**
+     * Provider 的访问地址
+     * Provider 注册了 Unix domain socket 地址并且和客户端在同一台机器上时使用它，否则使用 TCP 地址
+     * @param address provider ip
+     * @param port provider port
+     * @param providerInfo provider payload
+     * @return url
+     */
+    private String providerUrl(String address, int port, ProviderInfo providerInfo) {
+        String localUrl = providerInfo.getUrl();
+        if (localUrl != null && localUrl.startsWith(NettyTransport.UNIX_SCHEME + "://")
+                && NettyTransport.useEpoll() && address.equals(localAddress)) {
+            return localUrl;
+        }
+        return "http://" + address + ":" + port;
     }
 
     /**
@@ -250,18 +338,7 @@ public class DiscoveryClient extends ZookeeperClient {
         JSONObject instance = (JSONObject) JSONObject.parse(jsonValue);
         System.out.println(instance.toString());
 
-        String provider = instance.get("name").toString();
-        int deleteIndex = -1;
-        for (int i = 0; i < providersCache.get(provider).size(); i++) {
-            if (providersCache.get(provider).get(i).getId().equals(instance.get("id").toString())) {
-                deleteIndex = i;
-                break;
-            }
-        }
-
-        if (deleteIndex != -1) {
-            providersCache.get(provider).remove(deleteIndex);
-        }
+        removeProvider(instance.get("name").toString(), instance.get("id").toString());
 
         System.out.println("=================== delete provider end ============================\n\n");
     }
@@ -53,7 +53,18 @@ public class DiscoveryServer extends ZookeeperClient {
      */
     public void registerService(String service, String group, String version, int port, List<String> tags,
                                 int weight) throws Exception {
-        ProviderInfo provider = new ProviderInfo(null, null, tags, weight);
+        registerService(service, group, version, port, tags, weight, null);
+    }
+
+    /**
+     * 注册 Provider，同时带上本机访问地址（如 Unix domain socket：unix:///tmp/rpc.sock）
+     * 同一台机器上的客户端会优先使用这个地址
+     * @param localUrl local url, nullable
+     * @throws Exception exception
+     */
+    public void registerService(String service, String group, String version, int port, List<String> tags,
+                                int weight, String localUrl) throws Exception {
+        ProviderInfo provider = new ProviderInfo(null, localUrl, tags, weight);
 
         ServiceInstance<ProviderInfo> instance = ServiceInstance.<ProviderInfo>builder()
                 .name(Joiner.on(":").join(service, group, version))
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.exception;
+
+/**
+ * 请求没有被 Provider 执行的失败：连接失败、发送失败、服务端繁忙拒绝等
+ * 请求写出后连接断开时 Provider 可能已经执行，不属于这类失败
+ * 客户端只对这类失败换一个 Provider 重试，业务异常不重试
+ *
+ * @author lw1243925457
+ */
+public class RetryableException extends RpcException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RetryableException(String message) {
+        super(message);
+    }
+
+    public RetryableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
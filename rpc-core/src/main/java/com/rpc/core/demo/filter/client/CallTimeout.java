@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.filter.client;
+
+import com.rpc.core.demo.netty.common.Deadline;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 客户端调用超时配置
+ * 超时时间按 单次调用 > 方法 > 默认 的优先级确定，如果当前线程处在上游请求的截止时间中（Provider 中发起的调用），
+ * 取两者中更早的截止时间
+ * 剩余的超时时间随请求发送给服务端，服务端丢弃已经超时的请求
+ *
+ * 方法超时时间需要在第一次调用前设置
+ *
+ * @author lw1243925457
+ */
+public class CallTimeout {
+
+    /**
+     * 默认超时时间，0 表示不限制
+     */
+    private static long defaultTimeoutMillis = 5000;
+
+    /**
+     * service#method -> 超时时间
+     */
+    private static final Map<String, Long> methodTimeouts = new ConcurrentHashMap<>();
+
+    /**
+     * 当前线程下一次调用使用的超时时间，见 withTimeout
+     */
+    private static final ThreadLocal<Long> callTimeout = new ThreadLocal<>();
+
+    public static long getDefaultTimeoutMillis() {
+        return defaultTimeoutMillis;
+    }
+
+    public static void setDefaultTimeoutMillis(long defaultTimeoutMillis) {
+        CallTimeout.defaultTimeoutMillis = defaultTimeoutMillis;
+    }
+
+    public static void setMethodTimeout(String service, String method, long timeoutMillis) {
+        methodTimeouts.put(service + "#" + method, timeoutMillis);
+    }
+
+    /**
+     * @param service service
+     * @param method method name
+     * @return 方法配置的超时时间，没有配置时为默认超时时间
+     */
+    public static long timeoutMillis(String service, String method) {
+        return methodTimeouts.getOrDefault(service + "#" + method, defaultTimeoutMillis);
+    }
+
+    /**
+     * 使用指定的超时时间执行调用，替代方法和默认的超时时间
+     * <pre>
+     * User user = CallTimeout.withTimeout(200, () -> userService.findById(1));
+     * </pre>
+     * @param timeoutMillis timeout millis
+     * @param call rpc call
+     * @return result
+     */
+    public static <T> T withTimeout(long timeoutMillis, Supplier<T> call) {
+        Long previous = callTimeout.get();
+        callTimeout.set(timeoutMillis);
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                callTimeout.remove();
+            } else {
+                callTimeout.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 这次调用的截止时间
+     * @param methodTimeoutMillis 方法的超时时间
+     * @return deadline，不限制时返回 null
+     */
+    public static Deadline deadline(long methodTimeoutMillis) {
+        Long timeout = callTimeout.get();
+        long timeoutMillis = timeout != null ? timeout : methodTimeoutMillis;
+        Deadline deadline = timeoutMillis > 0 ? Deadline.after(timeoutMillis, TimeUnit.MILLISECONDS) : null;
+        return Deadline.earliest(Deadline.current(), deadline);
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rpc.core.demo.filter.client;
+
+import com.rpc.core.demo.api.ProviderInfo;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Provider 地址的熔断器，无锁实现
+ *
+ * 关闭：统计按秒分桶的滑动窗口，失败率或慢调用比例超过阈值时打开
+ * 打开：地址不可用，等待 openMillis 后进入半开
+ * 半开：只放行 halfOpenProbes 个探测请求，全部成功时关闭并清空窗口，有一个失败就重新打开
+ *
+ * 发送前通过 tryAcquire 获取许可，结果按许可记录：只有本轮半开放行的探测请求计入探测结果，
+ * 打开之前发出、半开时才返回的普通请求，以及上一轮半开的探测请求，结果都不影响当前状态
+ *
+ * @author lw1243925457
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    private static final int CLOSED = 0;
+    private static final int OPEN = 1;
+    private static final int HALF_OPEN = 2;
+
+    /**
+     * host:port 或 Unix domain socket 路径 -> 熔断器
+     */
+    private static final Map<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+
+    private final String endpoint;
+
+    /**
+     * 每个桶对应一秒，桶中的秒数过期时整体替换成新桶
+     */
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    private final AtomicInteger state = new AtomicInteger(CLOSED);
+
+    private volatile long openedAtNanos;
+
+    /**
+     * 每次打开时加一，区分探测请求属于哪一轮半开
+     */
+    private volatile int generation;
+
+    /**
+     * 半开状态已经放行和已经成功的探测请求数
+     */
+    private final AtomicInteger probes = new AtomicInteger();
+    private final AtomicInteger probeSuccesses = new AtomicInteger();
+
+    CircuitBreaker(String endpoint, int windowSeconds) {
+        this.endpoint = endpoint;
+        this.buckets = new AtomicReferenceArray<>(Math.max(1, windowSeconds));
+    }
+
+    /**
+     * Provider 地址的熔断器，按当前 CircuitBreakerConfig 配置创建
+     * @param provider provider
+     * @return 熔断器，没有开启时返回 null
+     */
+    public static CircuitBreaker forEndpoint(ProviderInfo provider) {
+        if (!CircuitBreakerConfig.isEnabled()) {
+            return null;
+        }
+        CircuitBreaker breaker = BREAKERS.get(provider.endpointKey());
+        if (breaker == null) {
+            breaker = BREAKERS.computeIfAbsent(provider.endpointKey(),
+                    key -> new CircuitBreaker(key, CircuitBreakerConfig.getWindowSeconds()));
+        }
+        return breaker;
+    }
+
+    /**
+     * 负载均衡前判断地址是否可用：打开超过等待时间时进入半开，半开状态下还有探测名额时可用
+     * @return available
+     */
+    public boolean isAvailable() {
+        switch (state.get()) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAtNanos < TimeUnit.MILLISECONDS.toNanos(CircuitBreakerConfig.getOpenMillis())) {
+                    return false;
+                }
+                if (state.compareAndSet(OPEN, HALF_OPEN)) {
+                    probes.set(0);
+                    probeSuccesses.set(0);
+                    log.info("Circuit half open: " + endpoint);
+                }
+                return probes.get() < CircuitBreakerConfig.getHalfOpenProbes();
+            default:
+                return probes.get() < CircuitBreakerConfig.getHalfOpenProbes();
+        }
+    }
+
+    /**
+     * 发送前获取许可，关闭时得到普通许可，半开时占用一个探测名额，得到本轮半开的探测许可
+     * 许可可用时必须把它传给 onResult 或 release 中的一个
+     * @return 许可，熔断打开或者探测名额已经用完时为 {@link Permit#DENIED}
+     */
+    public Permit tryAcquire() {
+        int currentGeneration = generation;
+        if (!isAvailable()) {
+            return Permit.DENIED;
+        }
+        if (state.get() != HALF_OPEN) {
+            return Permit.NORMAL;
+        }
+        if (probes.incrementAndGet() <= CircuitBreakerConfig.getHalfOpenProbes()) {
+            return new Permit(true, currentGeneration);
+        }
+        probes.decrementAndGet();
+        return Permit.DENIED;
+    }
+
+    /**
+     * 记录调用结果：探测许可的结果决定半开后关闭还是重新打开，普通许可的结果只在关闭状态下计入窗口
+     *
+     * 只有帧头的拒绝状态中，BUSY、OVERLOADED 以可重试异常结束，计为失败；
+     * FORBIDDEN、BAD_REQUEST 是调用方的问题（黑名单、请求无法解析、序列化方式不被接受），
+     * Provider 本身正常并且及时响应了，和业务异常一样计为成功，不会因为个别调用方的错误请求熔断地址
+     * @param permit tryAcquire 得到的许可
+     * @param success 是否收到了 Provider 的响应（包括业务异常和 FORBIDDEN、BAD_REQUEST 状态）
+     * @param latencyNanos 响应时间
+     */
+    public void onResult(Permit permit, boolean success, long latencyNanos) {
+        boolean slow = success && latencyNanos >= TimeUnit.MILLISECONDS.toNanos(CircuitBreakerConfig.getSlowCallMillis());
+        if (permit.probe) {
+            if (!isCurrentProbe(permit)) {
+                return;
+            }
+            if (!success || slow) {
+                open(HALF_OPEN);
+            } else if (probeSuccesses.incrementAndGet() >= CircuitBreakerConfig.getHalfOpenProbes()
+                    && state.compareAndSet(HALF_OPEN, CLOSED)) {
+                resetWindow();
+                log.info("Circuit closed: " + endpoint);
+            }
+            return;
+        }
+        if (state.get() != CLOSED) {
+            return;
+        }
+
+        long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        currentBucket(second).record(success, slow);
+        long calls = 0;
+        long failures = 0;
+        long slowCalls = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket != null && second - bucket.second < buckets.length()) {
+                calls += bucket.calls.sum();
+                failures += bucket.failures.sum();
+                slowCalls += bucket.slowCalls.sum();
+            }
+        }
+        if (calls < CircuitBreakerConfig.getMinimumCalls()) {
+            return;
+        }
+        if (failures >= calls * CircuitBreakerConfig.getFailureRateThreshold()
+                || slowCalls >= calls * CircuitBreakerConfig.getSlowCallRateThreshold()) {
+            open(CLOSED);
+        }
+    }
+
+    /**
+     * 请求被主动取消（如对冲中较慢的请求），结果不计入统计，本轮半开的探测许可归还探测名额
+     * @param permit tryAcquire 得到的许可
+     */
+    public void release(Permit permit) {
+        if (permit.probe && isCurrentProbe(permit)) {
+            probes.decrementAndGet();
+        }
+    }
+
+    public boolean isOpen() {
+        return state.get() == OPEN;
+    }
+
+    private boolean isCurrentProbe(Permit permit) {
+        return state.get() == HALF_OPEN && permit.generation == generation;
+    }
+
+    private void open(int from) {
+        if (state.compareAndSet(from, OPEN)) {
+            generation++;
+            openedAtNanos = System.nanoTime();
+            log.info("Circuit open: " + endpoint);
+        }
+    }
+
+    /**
+     * 当前秒的桶，桶中的秒数过期时替换成新桶
+     */
+    private Bucket currentBucket(long second) {
+        int index = (int) (second % buckets.length());
+        while (true) {
+            Bucket bucket = buckets.get(index);
+            if (bucket != null && bucket.second == second) {
+                return bucket;
+            }
+            Bucket fresh = new Bucket(second);
+            if (buckets.compareAndSet(index, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private void resetWindow() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, null);
+        }
+    }
+
+    @Override
+    public String toString() {
+        String[] names = {"CLOSED", "OPEN", "HALF_OPEN"};
+        return "CircuitBreaker{" + endpoint + ", " + names[state.get()] + "}";
+    }
+
+    /**
+     * 发送前获取的许可，记录是否是探测请求以及属于哪一轮半开
+     */
+    public static final class Permit {
+
+        /**
+         * 熔断打开或者探测名额已经用完，不能发送
+         */
+        public static final Permit DENIED = new Permit(false, -1);
+
+        /**
+         * 关闭状态下的普通许可
+         */
+        static final Permit NORMAL = new Permit(false, -1);
+
+        private final boolean probe;
+
+        private final int generation;
+
+        private Permit(boolean probe, int generation) {
+            this.probe = probe;
+            this.generation = generation;
+        }
+
+        public boolean isAcquired() {
+            return this != DENIED;
+        }
+
+        @Override
+        public String toString() {
+            return this == DENIED ? "DENIED" : probe ? "PROBE(" + generation + ")" : "NORMAL";
+        }
+    }
+
+    /**
+     * 一秒内的调用数、失败数、慢调用数，各自单独计数，不会溢出
+     */
+    private static final class Bucket {
+
+        private final long second;
+
+        private final LongAdder calls = new LongAdder();
+
+        private final LongAdder failures = new LongAdder();
+
+        private final LongAdder slowCalls = new LongAdder();
+
+        private Bucket(long second) {
+            this.second = second;
+        }
+
+        private void record(boolean success, boolean slow) {
+            calls.increment();
+            if (!success) {
+                failures.increment();
+            }
+            if (slow) {
+                slowCalls.increment();
+            }
+        }
+    }
+}
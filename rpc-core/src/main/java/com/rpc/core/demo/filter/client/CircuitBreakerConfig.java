@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rpc.core.demo.filter.client;
+
+/**
+ * 客户端熔断配置：每个 Provider 地址一个熔断器，按最近一段时间的失败率和慢调用比例打开
+ * 打开期间地址在负载均衡前被过滤掉，等待一段时间后放行少量探测请求，全部成功时关闭
+ *
+ * @author lw1243925457
+ */
+public class CircuitBreakerConfig {
+
+    private static boolean enabled = true;
+
+    /**
+     * 滑动窗口的长度（秒），按秒分桶统计
+     */
+    private static int windowSeconds = 10;
+
+    /**
+     * 窗口内的调用数不少于这个数时才计算失败率
+     */
+    private static int minimumCalls = 20;
+
+    /**
+     * 失败率达到这个比例时打开，失败指没有收到 Provider 的响应（连接失败、超时、服务端拒绝）
+     */
+    private static double failureRateThreshold = 0.5;
+
+    /**
+     * 响应时间超过这个值的调用算作慢调用（毫秒）
+     */
+    private static long slowCallMillis = 1000;
+
+    /**
+     * 慢调用比例达到这个比例时打开
+     */
+    private static double slowCallRateThreshold = 0.8;
+
+    /**
+     * 打开后等待多久进入半开状态（毫秒）
+     */
+    private static long openMillis = 5000;
+
+    /**
+     * 半开状态放行的探测请求数
+     */
+    private static int halfOpenProbes = 3;
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        CircuitBreakerConfig.enabled = enabled;
+    }
+
+    public static int getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    /**
+     * 只影响之后第一次使用的地址，需要在第一次调用前设置
+     * @param windowSeconds window seconds
+     */
+    public static void setWindowSeconds(int windowSeconds) {
+        CircuitBreakerConfig.windowSeconds = windowSeconds;
+    }
+
+    public static int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public static void setMinimumCalls(int minimumCalls) {
+        CircuitBreakerConfig.minimumCalls = minimumCalls;
+    }
+
+    public static double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public static void setFailureRateThreshold(double failureRateThreshold) {
+        CircuitBreakerConfig.failureRateThreshold = failureRateThreshold;
+    }
+
+    public static long getSlowCallMillis() {
+        return slowCallMillis;
+    }
+
+    public static void setSlowCallMillis(long slowCallMillis) {
+        CircuitBreakerConfig.slowCallMillis = slowCallMillis;
+    }
+
+    public static double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public static void setSlowCallRateThreshold(double slowCallRateThreshold) {
+        CircuitBreakerConfig.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    public static long getOpenMillis() {
+        return openMillis;
+    }
+
+    public static void setOpenMillis(long openMillis) {
+        CircuitBreakerConfig.openMillis = openMillis;
+    }
+
+    public static int getHalfOpenProbes() {
+        return halfOpenProbes;
+    }
+
+    public static void setHalfOpenProbes(int halfOpenProbes) {
+        CircuitBreakerConfig.halfOpenProbes = halfOpenProbes;
+    }
+}
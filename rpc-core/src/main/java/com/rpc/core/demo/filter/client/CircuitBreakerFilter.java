@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rpc.core.demo.filter.client;
+
+import com.rpc.core.demo.api.ProviderInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 过滤掉熔断器打开的 Provider，结果随运行状态变化，每次调用都执行
+ *
+ * @author lw1243925457
+ */
+public class CircuitBreakerFilter implements RpcFilter {
+
+    @Override
+    public List<ProviderInfo> filter(List<ProviderInfo> providers, List<String> tags) {
+        if (!CircuitBreakerConfig.isEnabled()) {
+            return providers;
+        }
+        List<ProviderInfo> available = null;
+        for (int i = 0; i < providers.size(); i++) {
+            ProviderInfo provider = providers.get(i);
+            if (!CircuitBreaker.forEndpoint(provider).isAvailable()) {
+                if (available == null) {
+                    available = new ArrayList<>(providers.subList(0, i));
+                }
+            } else if (available != null) {
+                available.add(provider);
+            }
+        }
+        return available == null ? providers : available;
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return false;
+    }
+}
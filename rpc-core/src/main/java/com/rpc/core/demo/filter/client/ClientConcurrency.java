@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rpc.core.demo.filter.client;
+
+/**
+ * 客户端对每个 Provider 地址的在途请求限制配置
+ * 限制按 AIMD 调整：请求正常返回时缓慢增加，服务端过载、超时、连接失败时按比例减少
+ * 所有 Provider 都达到限制时调用直接失败，不再继续向网络中堆积请求
+ *
+ * @author lw1243925457
+ */
+public class ClientConcurrency {
+
+    /**
+     * 每个地址的初始限制，0 表示不限制
+     */
+    private static int initialLimit = 0;
+
+    private static int minLimit = 1;
+
+    private static int maxLimit = 1000;
+
+    /**
+     * 失败时限制乘以这个比例
+     */
+    private static double backoffRatio = 0.9;
+
+    public static boolean isEnabled() {
+        return initialLimit > 0;
+    }
+
+    public static int getInitialLimit() {
+        return initialLimit;
+    }
+
+    /**
+     * 只影响之后第一次使用的地址，需要在第一次调用前设置
+     * @param initialLimit initial limit，0 表示不限制
+     */
+    public static void setInitialLimit(int initialLimit) {
+        ClientConcurrency.initialLimit = initialLimit;
+    }
+
+    public static int getMinLimit() {
+        return minLimit;
+    }
+
+    public static void setMinLimit(int minLimit) {
+        ClientConcurrency.minLimit = minLimit;
+    }
+
+    public static int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public static void setMaxLimit(int maxLimit) {
+        ClientConcurrency.maxLimit = maxLimit;
+    }
+
+    public static double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    public static void setBackoffRatio(double backoffRatio) {
+        ClientConcurrency.backoffRatio = backoffRatio;
+    }
+}
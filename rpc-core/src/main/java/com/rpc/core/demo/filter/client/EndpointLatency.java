@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rpc.core.demo.filter.client;
+
+import com.rpc.core.demo.api.ProviderInfo;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个服务在一个 Provider 地址上的延迟统计和摘除状态
+ * 同一个地址上的不同服务延迟差别可能很大，统计和摘除都按服务区分，只和同一个服务的其他地址比较
+ * 延迟同时记录 EWMA（反映最近的平均水平）和最近样本的百分位（反映长尾），记录不加锁
+ *
+ * @author lw1243925457
+ */
+public class EndpointLatency {
+
+    /**
+     * EWMA 的平滑系数，约等于最近 20 个请求的平均
+     */
+    private static final double EWMA_FACTOR = 0.1;
+
+    /**
+     * service:group:version -> host:port 或 Unix domain socket 路径 -> 延迟统计
+     */
+    private static final Map<String, Map<String, EndpointLatency>> STATS = new ConcurrentHashMap<>();
+
+    private final String endpoint;
+
+    /**
+     * 摘除时整体替换，恢复后只按新的样本判断
+     */
+    private volatile LatencyWindow window = new LatencyWindow();
+
+    /**
+     * EWMA 延迟（纳秒）的 double 位表示，0 表示还没有样本
+     */
+    private final AtomicLong ewmaBits = new AtomicLong();
+
+    private volatile long ejectedUntilNanos;
+
+    /**
+     * 连续被摘除的次数，决定下一次摘除的时间，只在检测线程中读写
+     */
+    private int ejections;
+
+    private EndpointLatency(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * @param providerKey service:group:version
+     * @param provider provider
+     * @return 延迟统计，没有时创建
+     */
+    public static EndpointLatency forEndpoint(String providerKey, ProviderInfo provider) {
+        Map<String, EndpointLatency> endpoints = STATS.get(providerKey);
+        if (endpoints == null) {
+            endpoints = STATS.computeIfAbsent(providerKey, key -> new ConcurrentHashMap<>());
+        }
+        EndpointLatency stats = endpoints.get(provider.endpointKey());
+        if (stats == null) {
+            stats = endpoints.computeIfAbsent(provider.endpointKey(), EndpointLatency::new);
+        }
+        return stats;
+    }
+
+    /**
+     * @param providerKey service:group:version
+     * @param provider provider
+     * @return 延迟统计，还没有记录过时返回 null
+     */
+    public static EndpointLatency find(String providerKey, ProviderInfo provider) {
+        Map<String, EndpointLatency> endpoints = STATS.get(providerKey);
+        return endpoints == null ? null : endpoints.get(provider.endpointKey());
+    }
+
+    public void record(long latencyNanos) {
+        window.record(latencyNanos);
+        ewmaBits.updateAndGet(bits -> {
+            double current = Double.longBitsToDouble(bits);
+            double next = current == 0 ? latencyNanos : current + (latencyNanos - current) * EWMA_FACTOR;
+            return Double.doubleToRawLongBits(next);
+        });
+    }
+
+    public double getEwmaNanos() {
+        return Double.longBitsToDouble(ewmaBits.get());
+    }
+
+    /**
+     * @param percentile 0 - 100
+     * @return 最近样本的延迟百分位，样本不足时返回 -1
+     */
+    public long percentile(double percentile) {
+        return window.percentile(percentile);
+    }
+
+    public boolean isEjected() {
+        long until = ejectedUntilNanos;
+        return until != 0 && until - System.nanoTime() > 0;
+    }
+
+    /**
+     * 摘除地址，摘除时间按连续摘除次数增加，清空延迟统计
+     * @return 这次摘除的时间（毫秒）
+     */
+    long eject() {
+        ejections += 1;
+        long millis = Math.min(OutlierDetection.getMaxEjectionMillis(), OutlierDetection.getBaseEjectionMillis() * ejections);
+        window = new LatencyWindow();
+        ewmaBits.set(0);
+        ejectedUntilNanos = System.nanoTime() + millis * 1_000_000;
+        return millis;
+    }
+
+    /**
+     * 地址恢复后检测正常，连续摘除次数减一
+     */
+    void healthy() {
+        if (ejections > 0) {
+            ejections -= 1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EndpointLatency{" + endpoint + ", ewma=" + (long) getEwmaNanos() / 1000 + "us, p99="
+                + percentile(99) / 1000 + "us, ejected=" + isEjected() + "}";
+    }
+}
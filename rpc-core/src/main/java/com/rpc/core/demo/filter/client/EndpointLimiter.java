@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rpc.core.demo.filter.client;
+
+import com.rpc.core.demo.api.ProviderInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provider 地址的在途请求限制，AIMD 调整
+ * 每个正常返回的请求把限制增加 1/limit（大约每轮请求加一），每个失败的请求把限制乘以 backoffRatio
+ * 同一个地址上的所有服务共用一个限制，地址列表刷新后限制保留
+ *
+ * @author lw1243925457
+ */
+public class EndpointLimiter {
+
+    /**
+     * 限制按千分之一为单位计数，避免浮点运算
+     */
+    private static final int SCALE = 1000;
+
+    /**
+     * host:port 或 Unix domain socket 路径 -> 限制
+     */
+    private static final Map<String, EndpointLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger limit;
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    EndpointLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit * SCALE;
+        this.maxLimit = maxLimit * SCALE;
+        this.limit = new AtomicInteger(Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit * SCALE)));
+    }
+
+    /**
+     * Provider 地址的限制，按当前 ClientConcurrency 配置创建
+     * @param provider provider
+     * @return 限制，没有开启时返回 null
+     */
+    public static EndpointLimiter forEndpoint(ProviderInfo provider) {
+        if (!ClientConcurrency.isEnabled()) {
+            return null;
+        }
+        EndpointLimiter limiter = LIMITERS.get(provider.endpointKey());
+        if (limiter == null) {
+            limiter = LIMITERS.computeIfAbsent(provider.endpointKey(), key -> new EndpointLimiter(
+                    ClientConcurrency.getInitialLimit(), ClientConcurrency.getMinLimit(), ClientConcurrency.getMaxLimit()));
+        }
+        return limiter;
+    }
+
+    /**
+     * 排除在途请求已经达到限制的 Provider，没有开启或者都没有达到限制时直接返回原列表
+     * @param providers provider list
+     * @return provider list，所有 Provider 都达到限制时为空
+     */
+    public static List<ProviderInfo> available(List<ProviderInfo> providers) {
+        if (!ClientConcurrency.isEnabled()) {
+            return providers;
+        }
+        List<ProviderInfo> available = null;
+        for (int i = 0; i < providers.size(); i++) {
+            ProviderInfo provider = providers.get(i);
+            if (forEndpoint(provider).isSaturated()) {
+                if (available == null) {
+                    available = new ArrayList<>(providers.subList(0, i));
+                }
+            } else if (available != null) {
+                available.add(provider);
+            }
+        }
+        return available == null ? providers : available;
+    }
+
+    /**
+     * 发送前获取许可，成功后必须调用 onSuccess、onDrop 或 release 中的一个归还
+     * @return false：在途请求已经达到限制
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current * SCALE >= limit.get()) {
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public boolean isSaturated() {
+        return inflight.get() * SCALE >= limit.get();
+    }
+
+    /**
+     * 收到了 Provider 的响应（包括业务异常），加法增加限制
+     */
+    public void onSuccess() {
+        inflight.decrementAndGet();
+        limit.updateAndGet(current -> Math.min(maxLimit, current + Math.max(1, SCALE * SCALE / current)));
+    }
+
+    /**
+     * 服务端过载、请求超时或者连接失败，乘法减少限制
+     */
+    public void onDrop() {
+        inflight.decrementAndGet();
+        limit.updateAndGet(current -> Math.max(minLimit, (int) (current * ClientConcurrency.getBackoffRatio())));
+    }
+
+    /**
+     * 请求被主动取消（如对冲中较慢的请求），只归还许可，不调整限制
+     */
+    public void release() {
+        inflight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return limit.get() / SCALE;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    @Override
+    public String toString() {
+        return "EndpointLimiter{limit=" + getLimit() + ", inflight=" + inflight.get() + "}";
+    }
+}
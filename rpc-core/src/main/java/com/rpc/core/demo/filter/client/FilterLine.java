@@ -20,37 +20,66 @@ package com.rpc.core.demo.filter.client;
 import com.rpc.core.demo.api.ProviderInfo;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
+ * Provider 过滤链
+ * 结果可以缓存的过滤器（如 tag 路由）只在 Provider 列表变化时执行，其他过滤器每次调用都执行
+ *
  * @author lw1243925457
  */
 public class FilterLine {
 
-    private static boolean isInit = false;
-    private static List<RpcFilter> rpcFilters = new ArrayList<>();
+    private static final List<RpcFilter> rpcFilters = new CopyOnWriteArrayList<>();
 
-    private static void init() {
+    static {
         addFilter(new TagFilter());
+        addFilter(new CircuitBreakerFilter());
+        addFilter(new OutlierFilter());
     }
 
     public static void addFilter(RpcFilter filter) {
         rpcFilters.add(filter);
     }
 
-    public static List<ProviderInfo> filter(List<ProviderInfo> providers, List<String> tags) {
-        if (!isInit) {
-            init();
-            isInit = true;
-        }
+    public static List<ProviderInfo> filter(String providerKey, List<ProviderInfo> providers, List<String> tags) {
+        List<ProviderInfo> filterResult = filterDynamic(providerKey, filterCacheable(providers, tags), tags);
+        System.out.printf("\n%s filter to %s\n", providers, filterResult);
+        return filterResult;
+    }
 
+    /**
+     * 执行结果可以缓存的过滤器
+     * @param providers provider list
+     * @param tags tags
+     * @return 过滤后的不可变列表
+     */
+    public static List<ProviderInfo> filterCacheable(List<ProviderInfo> providers, List<String> tags) {
         List<ProviderInfo> filterResult = new ArrayList<>(providers);
-
         for (RpcFilter filter: rpcFilters) {
-            filterResult = filter.filter(filterResult, tags);
+            if (filter.isCacheable()) {
+                filterResult = filter.filter(filterResult, tags);
+            }
         }
+        return Collections.unmodifiableList(filterResult);
+    }
 
-        System.out.printf("\n%s filter to %s\n", providers, filterResult);
+    /**
+     * 执行每次调用都需要执行的过滤器，没有这类过滤器时直接返回传入的列表
+     * @param providerKey 调用的服务 service:group:version
+     * @param providers 已经经过可缓存过滤器的 provider list
+     * @param tags tags
+     * @return provider list
+     */
+    public static List<ProviderInfo> filterDynamic(String providerKey, List<ProviderInfo> providers, List<String> tags) {
+        List<ProviderInfo> filterResult = providers;
+        for (RpcFilter filter: rpcFilters) {
+            if (!filter.isCacheable()) {
+                filterResult = filter.filter(providerKey, filterResult, tags);
+            }
+        }
         return filterResult;
     }
 }
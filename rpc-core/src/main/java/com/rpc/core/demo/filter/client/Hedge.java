@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.filter.client;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 客户端对冲请求配置
+ * 幂等方法的请求超过一定时间（最近延迟的百分位）还没有响应时，向另一个 Provider 再发一次，使用先到的响应并取消另一个
+ * 单个 Provider 变慢（如 GC 停顿）时，长尾延迟降低到对冲延迟加上正常延迟
+ * 对冲请求数量受比例限制，Provider 普遍变慢时不会让请求量翻倍
+ *
+ * 只有登记为幂等的方法才会对冲，需要在第一次调用前登记和设置
+ *
+ * @author lw1243925457
+ */
+public class Hedge {
+
+    /**
+     * service#method，同名的重载方法都视为幂等
+     */
+    private static final Set<String> idempotentMethods = ConcurrentHashMap.newKeySet();
+
+    /**
+     * service:group:version#method -> 对冲策略
+     */
+    private static final Map<String, HedgePolicy> policies = new ConcurrentHashMap<>();
+
+    /**
+     * 对冲延迟取最近请求延迟的百分位
+     */
+    private static double delayPercentile = 95;
+
+    /**
+     * 延迟样本不足时使用的对冲延迟
+     */
+    private static long defaultDelayMillis = 50;
+
+    /**
+     * 对冲延迟下限，避免延迟很低时几乎每个请求都对冲
+     */
+    private static long minDelayMillis = 10;
+
+    /**
+     * 对冲请求数量最多占请求数量的比例
+     */
+    private static double maxHedgeRatio = 0.1;
+
+    public static void addIdempotentMethod(String service, String method) {
+        idempotentMethods.add(service + "#" + method);
+    }
+
+    public static boolean isIdempotent(String service, String method) {
+        return idempotentMethods.contains(service + "#" + method);
+    }
+
+    /**
+     * 方法的对冲策略，同一个服务分组版本的同名方法共用
+     * @param providerKey service:group:version
+     * @param service service
+     * @param method method name
+     * @return 对冲策略，方法不是幂等的时候返回 null
+     */
+    public static HedgePolicy policy(String providerKey, String service, String method) {
+        if (!isIdempotent(service, method)) {
+            return null;
+        }
+        return policies.computeIfAbsent(providerKey + "#" + method, key -> new HedgePolicy(delayPercentile,
+                defaultDelayMillis, minDelayMillis, maxHedgeRatio));
+    }
+
+    public static double getDelayPercentile() {
+        return delayPercentile;
+    }
+
+    public static void setDelayPercentile(double delayPercentile) {
+        Hedge.delayPercentile = delayPercentile;
+    }
+
+    public static long getDefaultDelayMillis() {
+        return defaultDelayMillis;
+    }
+
+    public static void setDefaultDelayMillis(long defaultDelayMillis) {
+        Hedge.defaultDelayMillis = defaultDelayMillis;
+    }
+
+    public static long getMinDelayMillis() {
+        return minDelayMillis;
+    }
+
+    public static void setMinDelayMillis(long minDelayMillis) {
+        Hedge.minDelayMillis = minDelayMillis;
+    }
+
+    public static double getMaxHedgeRatio() {
+        return maxHedgeRatio;
+    }
+
+    public static void setMaxHedgeRatio(double maxHedgeRatio) {
+        Hedge.maxHedgeRatio = maxHedgeRatio;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.filter.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一个幂等方法的对冲策略：根据最近的响应延迟计算对冲延迟，并用令牌桶限制对冲比例
+ * 每个请求存入 maxHedgeRatio 个令牌，每次对冲消耗一个令牌，令牌不足时不对冲
+ *
+ * @author lw1243925457
+ */
+public class HedgePolicy {
+
+    /**
+     * 令牌按千分之一为单位计数，避免浮点运算
+     */
+    private static final int SCALE = 1000;
+
+    /**
+     * 令牌上限，允许突发请求中集中对冲的次数
+     */
+    private static final int MAX_TOKENS = 100 * SCALE;
+
+    private final LatencyWindow latencies = new LatencyWindow();
+    private final double delayPercentile;
+    private final long defaultDelayNanos;
+    private final long minDelayNanos;
+    private final int tokenRatio;
+    private final AtomicInteger tokens = new AtomicInteger(MAX_TOKENS);
+
+    HedgePolicy(double delayPercentile, long defaultDelayMillis, long minDelayMillis, double maxHedgeRatio) {
+        this.delayPercentile = delayPercentile;
+        this.defaultDelayNanos = TimeUnit.MILLISECONDS.toNanos(defaultDelayMillis);
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        this.tokenRatio = (int) (maxHedgeRatio * SCALE);
+    }
+
+    /**
+     * 发出一个请求，存入对冲令牌
+     */
+    public void onRequest() {
+        if (tokens.get() < MAX_TOKENS) {
+            tokens.updateAndGet(current -> Math.min(MAX_TOKENS, current + tokenRatio));
+        }
+    }
+
+    /**
+     * 尝试取得一次对冲的令牌
+     * @return 是否可以对冲
+     */
+    public boolean tryHedge() {
+        int current;
+        do {
+            current = tokens.get();
+            if (current < SCALE) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    /**
+     * 记录一次第一个请求的延迟，被取消的请求记录到取消时为止的时间
+     * @param latencyNanos latency
+     */
+    public void recordLatency(long latencyNanos) {
+        latencies.record(latencyNanos);
+    }
+
+    /**
+     * 发出请求后等待多久没有响应就对冲：最近延迟的百分位，样本不足时使用默认值
+     * @return delay nanos
+     */
+    public long delayNanos() {
+        long percentile = latencies.percentile(delayPercentile);
+        if (percentile < 0) {
+            return defaultDelayNanos;
+        }
+        return Math.max(minDelayNanos, percentile);
+    }
+}
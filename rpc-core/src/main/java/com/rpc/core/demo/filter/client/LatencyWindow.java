@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.filter.client;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 最近一段请求的延迟样本，环形数组保存，用于计算延迟百分位
+ * 百分位每记录一定数量的样本才重新计算一次，平时读取缓存的结果，记录和读取都不加锁
+ *
+ * @author lw1243925457
+ */
+public class LatencyWindow {
+
+    private static final int SIZE = 256;
+
+    /**
+     * 样本数量达到这个值之前不计算百分位
+     */
+    private static final int MIN_SAMPLES = 32;
+
+    /**
+     * 每记录这么多样本重新计算一次百分位
+     */
+    private static final int RECALCULATE_INTERVAL = 32;
+
+    private final AtomicLongArray samples = new AtomicLongArray(SIZE);
+    private final AtomicLong count = new AtomicLong();
+
+    private volatile double cachedPercentile = -1;
+    private volatile long cachedValue = -1;
+
+    public void record(long latencyNanos) {
+        long index = count.getAndIncrement();
+        samples.set((int) (index % SIZE), latencyNanos);
+        if ((index + 1) % RECALCULATE_INTERVAL == 0) {
+            cachedPercentile = -1;
+        }
+    }
+
+    /**
+     * 最近样本的百分位
+     * @param percentile 0 - 100
+     * @return 延迟，样本不足时返回 -1
+     */
+    public long percentile(double percentile) {
+        if (count.get() < MIN_SAMPLES) {
+            return -1;
+        }
+        if (cachedPercentile == percentile) {
+            return cachedValue;
+        }
+        int size = (int) Math.min(count.get(), SIZE);
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = samples.get(i);
+        }
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * size) - 1;
+        long value = sorted[Math.max(0, Math.min(size - 1, rank))];
+        cachedValue = value;
+        cachedPercentile = percentile;
+        return value;
+    }
+}
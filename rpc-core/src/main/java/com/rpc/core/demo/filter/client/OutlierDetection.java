@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rpc.core.demo.filter.client;
+
+/**
+ * 客户端慢节点摘除配置
+ * 定时比较同一个服务（service:group:version）各个 Provider 地址的延迟（EWMA 和 p99），
+ * 明显慢于其他地址中位数的地址被暂时摘除，摘除时间随摘除次数增加，同时被摘除的地址不超过一定比例
+ *
+ * @author lw1243925457
+ */
+public class OutlierDetection {
+
+    private static boolean enabled = true;
+
+    /**
+     * 检测间隔（毫秒）
+     */
+    private static long intervalMillis = 1000;
+
+    /**
+     * 延迟超过其他地址中位数的这个倍数时认为是慢节点
+     */
+    private static double latencyRatio = 2.0;
+
+    /**
+     * 延迟比其他地址中位数至少高出这么多（毫秒）才认为是慢节点，避免延迟很低时的微小差别引起摘除
+     */
+    private static long minDeltaMillis = 5;
+
+    /**
+     * 第一次摘除的时间（毫秒），第 n 次摘除 n 倍
+     */
+    private static long baseEjectionMillis = 10_000;
+
+    private static long maxEjectionMillis = 300_000;
+
+    /**
+     * 同一个服务同时被摘除的地址不超过这个比例
+     */
+    private static double maxEjectionPercent = 0.5;
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        OutlierDetection.enabled = enabled;
+    }
+
+    public static long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public static void setIntervalMillis(long intervalMillis) {
+        OutlierDetection.intervalMillis = intervalMillis;
+    }
+
+    public static double getLatencyRatio() {
+        return latencyRatio;
+    }
+
+    public static void setLatencyRatio(double latencyRatio) {
+        OutlierDetection.latencyRatio = latencyRatio;
+    }
+
+    public static long getMinDeltaMillis() {
+        return minDeltaMillis;
+    }
+
+    public static void setMinDeltaMillis(long minDeltaMillis) {
+        OutlierDetection.minDeltaMillis = minDeltaMillis;
+    }
+
+    public static long getBaseEjectionMillis() {
+        return baseEjectionMillis;
+    }
+
+    public static void setBaseEjectionMillis(long baseEjectionMillis) {
+        OutlierDetection.baseEjectionMillis = baseEjectionMillis;
+    }
+
+    public static long getMaxEjectionMillis() {
+        return maxEjectionMillis;
+    }
+
+    public static void setMaxEjectionMillis(long maxEjectionMillis) {
+        OutlierDetection.maxEjectionMillis = maxEjectionMillis;
+    }
+
+    public static double getMaxEjectionPercent() {
+        return maxEjectionPercent;
+    }
+
+    public static void setMaxEjectionPercent(double maxEjectionPercent) {
+        OutlierDetection.maxEjectionPercent = maxEjectionPercent;
+    }
+}
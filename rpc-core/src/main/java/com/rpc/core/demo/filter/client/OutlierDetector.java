@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rpc.core.demo.filter.client;
+
+import com.rpc.core.demo.api.ProviderInfo;
+import com.rpc.core.demo.discovery.DiscoveryClient;
+import com.rpc.core.demo.netty.client.ClientTimer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 慢节点检测：按服务记录每个 Provider 地址的响应延迟，定时比较同一个服务的各个地址的延迟
+ * 某个地址的 EWMA 或 p99 超过其他地址中位数的 latencyRatio 倍时暂时摘除，由 {@link OutlierFilter} 在负载均衡前过滤
+ * 第一次记录延迟时开始定时检测，检测在客户端定时器中执行
+ *
+ * @author lw1243925457
+ */
+@Slf4j
+public class OutlierDetector {
+
+    private static final AtomicBoolean STARTED = new AtomicBoolean();
+
+    private OutlierDetector() {
+    }
+
+    /**
+     * 记录收到响应的请求的延迟
+     * @param providerKey service:group:version
+     * @param provider provider
+     * @param latencyNanos 从发送到收到响应的时间
+     */
+    public static void record(String providerKey, ProviderInfo provider, long latencyNanos) {
+        if (!OutlierDetection.isEnabled()) {
+            return;
+        }
+        EndpointLatency.forEndpoint(providerKey, provider).record(latencyNanos);
+        if (!STARTED.get() && STARTED.compareAndSet(false, true)) {
+            schedule();
+        }
+    }
+
+    /**
+     * 记录没有收到响应就结束的请求（超时、对冲中落后被取消）的延迟
+     * 只记录收到响应的请求时，一直不响应的地址没有样本，不会被当作慢节点摘除
+     * @param providerKey service:group:version
+     * @param provider provider
+     * @param elapsedNanos 从发送到结束的时间
+     * @param timeoutNanos 发送时剩余的超时时间，没有截止时间时为 0
+     * @param timedOut 是否因为超时结束
+     */
+    public static void recordUnanswered(String providerKey, ProviderInfo provider, long elapsedNanos,
+                                        long timeoutNanos, boolean timedOut) {
+        record(providerKey, provider, unansweredLatency(elapsedNanos, timeoutNanos, timedOut));
+    }
+
+    /**
+     * 没有响应的请求的延迟至少是已经等待的时间，超时结束的至少是发送时剩余的超时时间
+     */
+    static long unansweredLatency(long elapsedNanos, long timeoutNanos, boolean timedOut) {
+        return timedOut ? Math.max(elapsedNanos, timeoutNanos) : elapsedNanos;
+    }
+
+    private static void schedule() {
+        ClientTimer.INSTANCE.newTimeout(timeout -> {
+            try {
+                detect(DiscoveryClient.getInstance());
+            } catch (RuntimeException e) {
+                log.info("Outlier detection failed", e);
+            } finally {
+                schedule();
+            }
+        }, OutlierDetection.getIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 按 service:group:version 分组检测所有缓存的 Provider 列表
+     * @param discoveryClient discovery client
+     */
+    static void detect(DiscoveryClient discoveryClient) {
+        if (!OutlierDetection.isEnabled()) {
+            return;
+        }
+        for (String key: discoveryClient.getProviderKeys()) {
+            detect(key, discoveryClient.getProviderList(key));
+        }
+    }
+
+    /**
+     * 检测一个服务的 Provider 列表，这个服务被摘除的地址不超过 maxEjectionPercent
+     * @param providerKey service:group:version
+     * @param providers provider list
+     */
+    static void detect(String providerKey, List<ProviderInfo> providers) {
+        if (providers.size() < 2) {
+            return;
+        }
+        int ejected = 0;
+        List<EndpointLatency> measured = new ArrayList<>(providers.size());
+        for (ProviderInfo provider: providers) {
+            EndpointLatency stats = EndpointLatency.find(providerKey, provider);
+            if (stats == null) {
+                continue;
+            }
+            if (stats.isEjected()) {
+                ejected += 1;
+            } else if (stats.percentile(99) >= 0) {
+                measured.add(stats);
+            }
+        }
+        if (measured.size() < 2) {
+            return;
+        }
+
+        // 和其他地址的中位数比较，得分为延迟超过中位数的倍数，不是慢节点时为 0
+        double[] scores = new double[measured.size()];
+        List<Integer> outliers = new ArrayList<>();
+        for (int i = 0; i < measured.size(); i++) {
+            scores[i] = score(measured, i);
+            if (scores[i] > 0) {
+                outliers.add(i);
+            } else {
+                measured.get(i).healthy();
+            }
+        }
+        outliers.sort(Comparator.comparingDouble((Integer i) -> scores[i]).reversed());
+
+        int maxEjected = (int) (providers.size() * OutlierDetection.getMaxEjectionPercent());
+        for (int i: outliers) {
+            if (ejected >= maxEjected) {
+                break;
+            }
+            EndpointLatency stats = measured.get(i);
+            String before = stats.toString();
+            long millis = stats.eject();
+            ejected += 1;
+            log.info("Eject outlier provider of " + providerKey + " for " + millis + "ms: " + before);
+        }
+    }
+
+    private static double score(List<EndpointLatency> measured, int index) {
+        double[] peerEwma = new double[measured.size() - 1];
+        double[] peerP99 = new double[measured.size() - 1];
+        for (int i = 0, j = 0; i < measured.size(); i++) {
+            if (i != index) {
+                peerEwma[j] = measured.get(i).getEwmaNanos();
+                peerP99[j] = measured.get(i).percentile(99);
+                j++;
+            }
+        }
+        EndpointLatency stats = measured.get(index);
+        return Math.max(ratio(stats.getEwmaNanos(), median(peerEwma)), ratio(stats.percentile(99), median(peerP99)));
+    }
+
+    /**
+     * @return 超过阈值时返回倍数，否则返回 0
+     */
+    private static double ratio(double value, double peerMedian) {
+        double minDelta = TimeUnit.MILLISECONDS.toNanos(OutlierDetection.getMinDeltaMillis());
+        if (value - peerMedian < minDelta || value < peerMedian * OutlierDetection.getLatencyRatio()) {
+            return 0;
+        }
+        return peerMedian <= 0 ? Double.MAX_VALUE : value / peerMedian;
+    }
+
+    private static double median(double[] values) {
+        Arrays.sort(values);
+        int middle = values.length / 2;
+        return values.length % 2 == 1 ? values[middle] : (values[middle - 1] + values[middle]) / 2;
+    }
+}
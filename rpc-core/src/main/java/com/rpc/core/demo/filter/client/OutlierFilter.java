@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rpc.core.demo.filter.client;
+
+import com.rpc.core.demo.api.ProviderInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 过滤掉被 {@link OutlierDetector} 暂时摘除的慢节点，结果随运行状态变化，每次调用都执行
+ * 摘除状态按服务区分，只能按调用的服务过滤；过滤掉的地址数不超过 maxEjectionPercent，全部被摘除时不过滤
+ *
+ * @author lw1243925457
+ */
+public class OutlierFilter implements RpcFilter {
+
+    /**
+     * 不知道调用的服务时不过滤
+     */
+    @Override
+    public List<ProviderInfo> filter(List<ProviderInfo> providers, List<String> tags) {
+        return providers;
+    }
+
+    @Override
+    public List<ProviderInfo> filter(String providerKey, List<ProviderInfo> providers, List<String> tags) {
+        if (!OutlierDetection.isEnabled()) {
+            return providers;
+        }
+        // 摘除后 Provider 列表变小时，被摘除的地址可能超过比例，超过的部分不过滤
+        int maxEjected = (int) (providers.size() * OutlierDetection.getMaxEjectionPercent());
+        int ejected = 0;
+        List<ProviderInfo> available = null;
+        for (int i = 0; i < providers.size(); i++) {
+            ProviderInfo provider = providers.get(i);
+            EndpointLatency stats = EndpointLatency.find(providerKey, provider);
+            if (ejected < maxEjected && stats != null && stats.isEjected()) {
+                ejected += 1;
+                if (available == null) {
+                    available = new ArrayList<>(providers.subList(0, i));
+                }
+            } else if (available != null) {
+                available.add(provider);
+            }
+        }
+        if (available == null || available.isEmpty()) {
+            return providers;
+        }
+        return available;
+    }
+
+    @Override
+    public boolean isCacheable() {
+        return false;
+    }
+}
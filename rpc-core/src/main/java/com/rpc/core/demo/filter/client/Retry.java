@@ -18,12 +18,37 @@
 package com.rpc.core.demo.filter.client;
 
 /**
+ * 客户端重试配置
+ * 只有请求没有被 Provider 执行的失败才会重试，每次重试换一个 Provider，重试前按指数退避加随机抖动等待
+ * 每个服务有一个重试预算（令牌桶），失败率升高时停止重试，避免 Provider 变慢时重试放大流量
+ *
  * @author lw1243925457
  */
 public class Retry {
 
     private static int retryLimit = 0;
 
+    /**
+     * 第一次重试的退避上限，之后每次翻倍
+     */
+    private static long backoffBaseMillis = 10;
+
+    /**
+     * 退避时间上限
+     */
+    private static long backoffMaxMillis = 1000;
+
+    /**
+     * 重试预算的令牌上限，令牌数不超过上限的一半时停止重试
+     */
+    private static int budgetMaxTokens = 10;
+
+    /**
+     * 每次成功调用存入的令牌数，每次失败扣除一个令牌
+     * 0.1 表示失败率持续超过约 10% 时预算会被耗尽
+     */
+    private static double budgetTokenRatio = 0.1;
+
     public static int getRetryLimit() {
         return retryLimit;
     }
@@ -31,4 +56,44 @@ public class Retry {
     public static void setRetryLimit(int retryLimit) {
         Retry.retryLimit = retryLimit;
     }
+
+    public static long getBackoffBaseMillis() {
+        return backoffBaseMillis;
+    }
+
+    public static void setBackoffBaseMillis(long backoffBaseMillis) {
+        Retry.backoffBaseMillis = backoffBaseMillis;
+    }
+
+    public static long getBackoffMaxMillis() {
+        return backoffMaxMillis;
+    }
+
+    public static void setBackoffMaxMillis(long backoffMaxMillis) {
+        Retry.backoffMaxMillis = backoffMaxMillis;
+    }
+
+    public static int getBudgetMaxTokens() {
+        return budgetMaxTokens;
+    }
+
+    /**
+     * 只影响之后创建的服务预算，需要在第一次调用前设置
+     * @param budgetMaxTokens max tokens
+     */
+    public static void setBudgetMaxTokens(int budgetMaxTokens) {
+        Retry.budgetMaxTokens = budgetMaxTokens;
+    }
+
+    public static double getBudgetTokenRatio() {
+        return budgetTokenRatio;
+    }
+
+    /**
+     * 只影响之后创建的服务预算，需要在第一次调用前设置
+     * @param budgetTokenRatio token ratio
+     */
+    public static void setBudgetTokenRatio(double budgetTokenRatio) {
+        Retry.budgetTokenRatio = budgetTokenRatio;
+    }
 }
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.filter.client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 服务的重试预算，令牌桶实现
+ * 成功调用存入 tokenRatio 个令牌，可重试的失败扣除一个令牌，令牌数超过上限的一半时才允许重试
+ * Provider 变慢或不可用时失败率升高，令牌很快耗尽，重试停止，不会形成重试风暴；恢复后成功调用重新存入令牌
+ *
+ * @author lw1243925457
+ */
+public class RetryBudget {
+
+    /**
+     * 令牌按千分之一为单位计数，避免浮点运算
+     */
+    private static final int SCALE = 1000;
+
+    /**
+     * service:group:version -> 重试预算
+     */
+    private static final Map<String, RetryBudget> BUDGETS = new ConcurrentHashMap<>();
+
+    private final int maxTokens;
+    private final int threshold;
+    private final int tokenRatio;
+    private final AtomicInteger tokens;
+
+    RetryBudget(int maxTokens, double tokenRatio) {
+        this.maxTokens = maxTokens * SCALE;
+        this.threshold = this.maxTokens / 2;
+        this.tokenRatio = (int) (tokenRatio * SCALE);
+        this.tokens = new AtomicInteger(this.maxTokens);
+    }
+
+    /**
+     * 服务的重试预算，同一个服务的所有方法和代理共用，按当前 Retry 配置创建
+     * @param providerKey service:group:version
+     * @return retry budget
+     */
+    public static RetryBudget forService(String providerKey) {
+        return BUDGETS.computeIfAbsent(providerKey,
+                key -> new RetryBudget(Retry.getBudgetMaxTokens(), Retry.getBudgetTokenRatio()));
+    }
+
+    public void onSuccess() {
+        if (tokens.get() < maxTokens) {
+            tokens.updateAndGet(current -> Math.min(maxTokens, current + tokenRatio));
+        }
+    }
+
+    public void onFailure() {
+        tokens.updateAndGet(current -> Math.max(0, current - SCALE));
+    }
+
+    public boolean canRetry() {
+        return tokens.get() > threshold;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.filter.client;
+
+import com.rpc.core.demo.api.ProviderInfo;
+import com.rpc.core.demo.exception.RetryableException;
+import com.rpc.core.demo.netty.common.Deadline;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 一次调用的重试状态，每次调用新建，不在线程间共享
+ * 各次尝试依次执行，记录已经重试的次数和失败过的 Provider，重试时排除这些 Provider
+ *
+ * @author lw1243925457
+ */
+public class RetryContext {
+
+    private final RetryBudget budget;
+
+    /**
+     * 调用的截止时间，超过后不再重试，没有时为 null
+     */
+    private final Deadline deadline;
+    private final Set<String> failedProviders = new HashSet<>();
+    private int retries = 0;
+
+    public RetryContext(RetryBudget budget, Deadline deadline) {
+        this.budget = budget;
+        this.deadline = deadline;
+    }
+
+    /**
+     * 排除失败过的 Provider，全部失败过时返回原列表，在剩下的 Provider 中重试
+     * @param providers provider list
+     * @return provider list
+     */
+    public List<ProviderInfo> filter(List<ProviderInfo> providers) {
+        if (failedProviders.isEmpty()) {
+            return providers;
+        }
+        List<ProviderInfo> available = new ArrayList<>(providers.size());
+        for (ProviderInfo provider: providers) {
+            if (!failedProviders.contains(provider.getUrl())) {
+                available.add(provider);
+            }
+        }
+        return available.isEmpty() ? providers : available;
+    }
+
+    /**
+     * 调用得到了 Provider 的响应（包括业务异常），存入重试令牌
+     */
+    public void onSuccess() {
+        budget.onSuccess();
+    }
+
+    /**
+     * 调用失败后判断是否重试：只重试请求没有被执行的失败，并且没有超过重试次数、重试预算和截止时间
+     * @param provider 失败的 Provider
+     * @param cause 失败原因
+     * @return 是否重试
+     */
+    public boolean shouldRetry(ProviderInfo provider, Throwable cause) {
+        if (!isRetryable(cause)) {
+            // 不可重试的失败不一定得到了 Provider 的响应（如连接断开），不存入令牌
+            return false;
+        }
+        budget.onFailure();
+        if (retries >= Retry.getRetryLimit() || !budget.canRetry() || (deadline != null && deadline.isExpired())) {
+            return false;
+        }
+        retries += 1;
+        failedProviders.add(provider.getUrl());
+        return true;
+    }
+
+    /**
+     * 下一次重试前的等待时间：指数退避，在 [0, min(max, base * 2^(retries-1))] 中随机取值，分散同时失败的请求
+     * @return backoff millis
+     */
+    public long backoffMillis() {
+        long ceiling = Retry.getBackoffBaseMillis() << Math.min(retries - 1, 20);
+        ceiling = Math.min(Retry.getBackoffMaxMillis(), ceiling);
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public static boolean isRetryable(Throwable cause) {
+        Throwable current = cause;
+        while (current instanceof CompletionException && current.getCause() != null) {
+            current = current.getCause();
+        }
+        return current instanceof RetryableException;
+    }
+}
@@ -27,4 +27,24 @@ import java.util.List;
 public interface RpcFilter {
 
     List<ProviderInfo> filter(List<ProviderInfo> providers, List<String> tags);
+
+    /**
+     * 按调用的服务过滤，运行状态按服务区分的过滤器（如慢节点摘除）需要覆盖，默认不区分服务
+     * @param providerKey service:group:version
+     * @param providers provider list
+     * @param tags tags
+     * @return provider list
+     */
+    default List<ProviderInfo> filter(String providerKey, List<ProviderInfo> providers, List<String> tags) {
+        return filter(providers, tags);
+    }
+
+    /**
+     * 过滤结果是否只取决于 Provider 列表和 tags
+     * 是的话客户端按方法缓存过滤结果，Provider 列表变化时才重新过滤；按运行状态过滤的实现需要返回 false，每次调用都会执行
+     * @return cacheable
+     */
+    default boolean isCacheable() {
+        return true;
+    }
 }
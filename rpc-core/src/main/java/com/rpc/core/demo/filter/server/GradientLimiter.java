@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.rpc.core.demo.filter.server;
+
+import lombok.Getter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 服务端自适应并发限制（Gradient 算法）：根据请求执行延迟的变化调整允许同时处理的请求数
+ *
+ * 每个采样窗口计算一次平均延迟（短期延迟），和长期延迟的指数移动平均比较：
+ * 短期延迟没有明显升高时，按 sqrt(limit) 逐步放大限制；延迟升高说明请求开始排队，按比例缩小限制
+ * 超过限制的请求直接拒绝，不进入业务线程池排队，避免流量突增时所有请求的延迟一起变长
+ *
+ * @author lw1243925457
+ */
+public class GradientLimiter {
+
+    /**
+     * 每个采样窗口的请求数
+     */
+    private static final int WINDOW_SIZE = 20;
+
+    /**
+     * 长期延迟的平滑系数，约等于最近 30 个窗口的平均
+     */
+    private static final double LONG_RTT_FACTOR = 2.0 / 31;
+
+    /**
+     * 短期延迟在长期延迟的 1.5 倍以内时认为没有排队，不缩小限制
+     */
+    private static final double TOLERANCE = 1.5;
+
+    /**
+     * 新限制的平滑系数，避免单个窗口的波动引起限制剧烈变化
+     */
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    @Getter
+    private volatile int limit;
+
+    /**
+     * 限制的精确值，只在 update 中读写
+     */
+    private double estimatedLimit;
+
+    /**
+     * 长期延迟，只在 update 中读写
+     */
+    private double longRttNanos;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    private final AtomicInteger samples = new AtomicInteger();
+
+    private final AtomicLong rttSumNanos = new AtomicLong();
+
+    /**
+     * 当前窗口内达到过的最大并发数，用来判断限制是否真正起作用
+     */
+    private final AtomicInteger windowMaxInflight = new AtomicInteger();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    public GradientLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid concurrency limit range: [" + minLimit + ", " + maxLimit + "]");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.limit = (int) estimatedLimit;
+    }
+
+    /**
+     * 请求开始处理前获取许可，成功后必须调用 onComplete 或 release 归还
+     * @return false：并发数已经达到限制，请求应该被拒绝
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= limit) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                windowMaxInflight.accumulateAndGet(current + 1, Math::max);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 请求没有执行就结束（例如线程池拒绝、超时丢弃），只归还许可，不计入延迟
+     */
+    public void release() {
+        inflight.decrementAndGet();
+    }
+
+    /**
+     * 请求执行完成，归还许可并记录延迟，每满一个窗口更新一次限制
+     * @param rttNanos 从获取许可到执行完成的时间，包含线程池中的排队时间
+     */
+    public void onComplete(long rttNanos) {
+        inflight.decrementAndGet();
+        rttSumNanos.addAndGet(rttNanos);
+        if (samples.incrementAndGet() >= WINDOW_SIZE) {
+            update();
+        }
+    }
+
+    private synchronized void update() {
+        // 等锁期间其他线程已经处理了这个窗口
+        if (samples.get() < WINDOW_SIZE) {
+            return;
+        }
+        int count = samples.getAndSet(0);
+        long sum = rttSumNanos.getAndSet(0);
+        int maxInflight = windowMaxInflight.getAndSet(0);
+
+        double shortRtt = (double) sum / count;
+        if (shortRtt <= 0) {
+            return;
+        }
+        longRttNanos = longRttNanos == 0 ? shortRtt : longRttNanos + (shortRtt - longRttNanos) * LONG_RTT_FACTOR;
+        // 负载下降后短期延迟明显低于长期延迟，让长期延迟更快回落，否则之后的升高会被掩盖
+        if (longRttNanos / shortRtt > 2) {
+            longRttNanos *= 0.95;
+        }
+        // 实际并发不到限制的一半，限制不是瓶颈，延迟变化和限制无关，不调整
+        if (maxInflight < estimatedLimit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / shortRtt));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return "GradientLimiter{limit=" + limit + ", inflight=" + inflight.get() + ", rejected=" + rejected.get() + "}";
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.netty.client;
+
+/**
+ * 客户端连接池配置：每个 Provider 地址（host:port）对应一个连接池
+ *
+ * @author lw1243925457
+ */
+public class ChannelPoolConfig {
+
+    /**
+     * 每个地址保持的最少连接数，空闲回收不会低于这个数
+     */
+    private static int minConnections = 1;
+
+    /**
+     * 每个地址最多建立的连接数
+     */
+    private static int maxConnections = 4;
+
+    /**
+     * 单个连接上的在途请求超过这个数时，如果还没达到最大连接数，则新建连接分担
+     */
+    private static int maxPendingPerConnection = 256;
+
+    /**
+     * 连接空闲多久后被回收（毫秒）
+     */
+    private static long idleTimeoutMillis = 60_000;
+
+    public static int getMinConnections() {
+        return minConnections;
+    }
+
+    public static void setMinConnections(int minConnections) {
+        ChannelPoolConfig.minConnections = minConnections;
+    }
+
+    public static int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public static void setMaxConnections(int maxConnections) {
+        ChannelPoolConfig.maxConnections = maxConnections;
+    }
+
+    public static int getMaxPendingPerConnection() {
+        return maxPendingPerConnection;
+    }
+
+    public static void setMaxPendingPerConnection(int maxPendingPerConnection) {
+        ChannelPoolConfig.maxPendingPerConnection = maxPendingPerConnection;
+    }
+
+    public static long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public static void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        ChannelPoolConfig.idleTimeoutMillis = idleTimeoutMillis;
+    }
+}
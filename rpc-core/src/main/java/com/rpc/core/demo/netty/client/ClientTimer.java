@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.netty.client;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 客户端共用的定时器，用于重试退避等延迟任务
+ * 时间轮添加和取消任务都是 O(1)，大量在途请求各自的延迟任务也只占用一个线程
+ *
+ * @author lw1243925457
+ */
+public enum ClientTimer {
+
+    /**
+     * 单例
+     */
+    INSTANCE;
+
+    private static final long TICK_MILLIS = 10;
+
+    private final HashedWheelTimer timer = new HashedWheelTimer(
+            new ThreadFactoryBuilder().setNameFormat("client timer-%d").setDaemon(true).build(),
+            TICK_MILLIS, TimeUnit.MILLISECONDS);
+
+    /**
+     * 延迟执行任务，任务在定时器线程中执行，不能阻塞
+     * @param task task
+     * @param delay delay
+     * @param unit time unit
+     * @return timeout handle，可以取消
+     */
+    public Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+        return timer.newTimeout(task, delay, unit);
+    }
+}
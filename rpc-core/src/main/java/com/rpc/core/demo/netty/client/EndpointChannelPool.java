@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.netty.client;
+
+import com.rpc.core.demo.exception.RetryableException;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 单个 Provider 地址的连接池
+ * 取连接时选择在途请求最少的连接；连接不足或者都比较忙时新建连接
+ * 同一时刻一个地址只会有一个建连动作，并发的取连接请求共享同一个建连Future
+ *
+ * @author lw1243925457
+ */
+@Slf4j
+class EndpointChannelPool {
+
+    private final SocketAddress address;
+    private final Bootstrap bootstrap;
+
+    private final List<Channel> channels = new CopyOnWriteArrayList<>();
+
+    /**
+     * 正在进行中的建连，没有时为null
+     */
+    private final AtomicReference<CompletableFuture<Channel>> connecting = new AtomicReference<>();
+
+    EndpointChannelPool(SocketAddress address, Bootstrap bootstrap) {
+        this.address = address;
+        this.bootstrap = bootstrap;
+    }
+
+    /**
+     * 获取一个可用连接
+     * 有可用连接时直接返回在途请求最少的那个，需要扩容时在后台建连
+     * @return channel future
+     */
+    CompletableFuture<Channel> acquire() {
+        Channel best = null;
+        int bestPending = Integer.MAX_VALUE;
+        for (Channel channel: channels) {
+            RpcClientHandler handler = handler(channel);
+            if (!channel.isActive() || handler == null) {
+                continue;
+            }
+            int pending = handler.pendingCount();
+            if (pending < bestPending) {
+                best = channel;
+                bestPending = pending;
+            }
+        }
+
+        if (best == null) {
+            return connect();
+        }
+
+        int size = channels.size();
+        if (size < ChannelPoolConfig.getMinConnections()
+                || (bestPending >= ChannelPoolConfig.getMaxPendingPerConnection()
+                && size < ChannelPoolConfig.getMaxConnections())) {
+            connect();
+        }
+        return CompletableFuture.completedFuture(best);
+    }
+
+    /**
+     * 建立新连接，已经有建连在进行时直接返回它的Future
+     * @return channel future
+     */
+    private CompletableFuture<Channel> connect() {
+        while (true) {
+            CompletableFuture<Channel> current = connecting.get();
+            if (current != null) {
+                return current;
+            }
+
+            CompletableFuture<Channel> future = new CompletableFuture<>();
+            if (!connecting.compareAndSet(null, future)) {
+                continue;
+            }
+
+            log.debug("create new channel to " + address);
+            bootstrap.connect(address).addListener((ChannelFutureListener) connectFuture -> {
+                if (connectFuture.isSuccess()) {
+                    Channel channel = connectFuture.channel();
+                    channels.add(channel);
+                    channel.closeFuture().addListener(closeFuture -> channels.remove(channel));
+                    connecting.set(null);
+                    future.complete(channel);
+                } else {
+                    connecting.set(null);
+                    future.completeExceptionally(new RetryableException("Connect to " + address + " failed",
+                            connectFuture.cause()));
+                }
+            });
+            return future;
+        }
+    }
+
+    /**
+     * 回收空闲连接：没有在途请求且空闲超时的连接会被关闭，但保留最少连接数
+     * @param now current time millis
+     */
+    void reapIdle(long now) {
+        for (Channel channel: channels) {
+            if (channels.size() <= ChannelPoolConfig.getMinConnections()) {
+                return;
+            }
+            RpcClientHandler handler = handler(channel);
+            if (handler != null && handler.pendingCount() == 0
+                    && now - handler.getLastActiveTime() > ChannelPoolConfig.getIdleTimeoutMillis()) {
+                log.debug("close idle channel: " + channel);
+                channels.remove(channel);
+                channel.close();
+            }
+        }
+    }
+
+    void close() {
+        for (Channel channel: channels) {
+            channel.close();
+        }
+    }
+
+    static RpcClientHandler handler(Channel channel) {
+        return channel.pipeline().get(RpcClientHandler.class);
+    }
+}
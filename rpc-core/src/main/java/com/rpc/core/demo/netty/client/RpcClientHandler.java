@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.netty.client;
+
+import com.alibaba.fastjson.TypeReference;
+import com.alibaba.fastjson.util.ParameterizedTypeImpl;
+import com.rpc.core.demo.api.RpcResponse;
+import com.rpc.core.demo.exception.RetryableException;
+import com.rpc.core.demo.exception.RpcException;
+import com.rpc.core.demo.netty.common.FrameHeader;
+import com.rpc.core.demo.netty.common.MessageType;
+import com.rpc.core.demo.netty.common.RpcProtocol;
+import com.rpc.core.demo.netty.common.Serializers;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 客户端响应处理器，每个连接一个实例
+ * 发送请求前先登记请求ID对应的Future，收到响应后根据响应中的请求ID找到对应的Future并完成
+ * 这样同一个连接上可以同时有多个请求在途
+ * 连接建立后发送握手，保存服务端下发的方法目录，之后的请求只需要带方法ID和参数
+ *
+ * @author lw1243925457
+ */
+@Slf4j
+public class RpcClientHandler extends SimpleChannelInboundHandler<RpcProtocol> {
+
+    /**
+     * 在途请求表：request id -> 等待响应的Future
+     */
+    private final Map<Long, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
+
+    /**
+     * 结果类型 -> RpcResponse<结果类型>，缓存下来避免每次生成新的 Type 导致反序列化器缓存失效
+     */
+    private static final Map<Type, Type> RESPONSE_TYPES = new ConcurrentHashMap<>();
+
+    /**
+     * 握手响应中方法目录的反序列化类型
+     */
+    private static final Type CATALOGUE_TYPE = new TypeReference<Map<String, Integer>>() {}.getType();
+
+    /**
+     * 服务端下发的方法目录：service:group:version#method(paramType,paramType) -> 方法ID，握手完成前为空
+     */
+    private volatile Map<String, Integer> methodIds = Collections.emptyMap();
+
+    /**
+     * 最近一次发送或收到数据的时间，用于连接池回收空闲连接
+     */
+    private volatile long lastActiveTime = System.currentTimeMillis();
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext channelHandlerContext, RpcProtocol msg) {
+        log.info("Netty client receive message, id: " + msg.getId() + ", length: " + msg.getLen());
+
+        if (msg.getType() == MessageType.HANDSHAKE) {
+            handshakeComplete(msg);
+            return;
+        }
+        if (msg.getType() != MessageType.RESPONSE) {
+            return;
+        }
+
+        lastActiveTime = System.currentTimeMillis();
+        PendingRequest pending = pendingRequests.remove(msg.getId());
+        if (pending == null) {
+            log.info("Can't find pending request for response id: " + msg.getId());
+            return;
+        }
+
+        // 按帧中的序列化方式和调用方法的返回类型，直接从 ByteBuf 反序列化成 RpcResponse对象，结果只需要解析一次
+        // 方法返回后 SimpleChannelInboundHandler 会 release 数据内容
+        // 非正常状态的响应只有帧头：服务端繁忙或者过载时请求没有执行，以可重试异常结束，其他状态生成失败响应
+        // 失败响应算作收到了 Provider 的响应，熔断器不计为失败，见 CircuitBreaker#onResult
+        if (msg.getStatus() != FrameHeader.STATUS_OK && !msg.content().isReadable()) {
+            if (msg.getStatus() == FrameHeader.STATUS_BUSY || msg.getStatus() == FrameHeader.STATUS_OVERLOADED) {
+                pending.future.completeExceptionally(new RetryableException(FrameHeader.statusMessage(msg.getStatus())));
+                return;
+            }
+            RpcResponse<Object> rpcResponse = new RpcResponse<>();
+            rpcResponse.setStatus(false);
+            rpcResponse.setException(new RpcException(FrameHeader.statusMessage(msg.getStatus())));
+            pending.future.complete(rpcResponse);
+            return;
+        }
+        // 只解析本端配置过的序列化方式，服务端应该使用和请求相同的方式
+        if (!Serializers.isAccepted(msg.getSerializer())) {
+            pending.future.completeExceptionally(new RpcException("Unaccepted response serializer: " + msg.getSerializer()));
+            return;
+        }
+        try {
+            RpcResponse<Object> rpcResponse = Serializers.get(msg.getSerializer())
+                    .deserialize(msg.content(), pending.responseType);
+            pending.future.complete(rpcResponse);
+        } catch (Exception e) {
+            pending.future.completeExceptionally(new RpcException("Response deserialize failed", e));
+        }
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        RpcProtocol handshake = RpcProtocol.headerOnly(MessageType.HANDSHAKE, 0, FrameHeader.STATUS_OK);
+        handshake.setSerializer(Serializers.getDefaultSerializer().getId());
+        ctx.writeAndFlush(handshake);
+        super.channelActive(ctx);
+    }
+
+    /**
+     * 保存服务端下发的方法目录，服务端不支持或者解析失败时继续使用完整的请求
+     * @param msg handshake response
+     */
+    private void handshakeComplete(RpcProtocol msg) {
+        if (msg.getStatus() != FrameHeader.STATUS_OK || !msg.content().isReadable()
+                || !Serializers.isAccepted(msg.getSerializer())) {
+            return;
+        }
+        try {
+            Map<String, Integer> catalogue = Serializers.get(msg.getSerializer()).deserialize(msg.content(), CATALOGUE_TYPE);
+            if (catalogue != null) {
+                methodIds = catalogue;
+            }
+        } catch (Exception e) {
+            log.info("Handshake catalogue deserialize failed", e);
+        }
+    }
+
+    /**
+     * @param methodKey service:group:version#method(paramType,paramType)
+     * @return 服务端下发的方法ID，没有时返回 null
+     */
+    Integer methodId(String methodKey) {
+        return methodIds.get(methodKey);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // 请求已经写出，Provider 可能已经执行，不能当作可重试的失败
+        failAll(new RpcException("Connection closed: " + ctx.channel().remoteAddress()));
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        cause.printStackTrace();
+        ctx.close();
+    }
+
+    /**
+     * 登记一个在途请求
+     * @param id request id
+     * @param resultType 调用方法的返回类型，用于反序列化结果
+     * @return 响应Future
+     */
+    CompletableFuture<RpcResponse<Object>> register(long id, Type resultType) {
+        PendingRequest pending = new PendingRequest(responseType(resultType));
+        pendingRequests.put(id, pending);
+        lastActiveTime = System.currentTimeMillis();
+        return pending.future;
+    }
+
+    /**
+     * 请求发送失败等情况下，移除在途请求并以异常结束
+     * @param id request id
+     * @param cause exception
+     */
+    void fail(long id, Throwable cause) {
+        PendingRequest pending = pendingRequests.remove(id);
+        if (pending != null) {
+            pending.future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * 调用方不再需要结果时移除在途请求，之后到达的响应直接丢弃
+     * @param id request id
+     */
+    void cancel(long id) {
+        pendingRequests.remove(id);
+    }
+
+    /**
+     * 当前连接上的在途请求数，连接池据此选择最空闲的连接
+     * @return pending count
+     */
+    int pendingCount() {
+        return pendingRequests.size();
+    }
+
+    long getLastActiveTime() {
+        return lastActiveTime;
+    }
+
+    /**
+     * 连接断开时，所有在途请求都以异常结束，避免调用方一直等待
+     * @param cause exception
+     */
+    private void failAll(Throwable cause) {
+        for (Long id: pendingRequests.keySet()) {
+            fail(id, cause);
+        }
+    }
+
+    private static Type responseType(Type resultType) {
+        return RESPONSE_TYPES.computeIfAbsent(resultType,
+                type -> new ParameterizedTypeImpl(new Type[]{type}, null, RpcResponse.class));
+    }
+
+    /**
+     * 在途请求：响应Future 和 响应的反序列化类型
+     */
+    private static final class PendingRequest {
+
+        private final CompletableFuture<RpcResponse<Object>> future = new CompletableFuture<>();
+        private final Type responseType;
+
+        private PendingRequest(Type responseType) {
+            this.responseType = responseType;
+        }
+    }
+}
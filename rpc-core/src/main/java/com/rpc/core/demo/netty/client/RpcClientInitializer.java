@@ -2,20 +2,25 @@ package com.rpc.core.demo.netty.client;
 
 import com.rpc.core.demo.netty.common.RpcDecoder;
 import com.rpc.core.demo.netty.common.RpcEncoder;
+import com.rpc.core.demo.netty.common.TransportConfig;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.socket.SocketChannel;
 
 /**
+ * 客户端连接的 pipeline 初始化，TCP 和 Unix domain socket 连接共用
  * @author lw
  */
-public class RpcClientInitializer extends ChannelInitializer<SocketChannel> {
+public class RpcClientInitializer extends ChannelInitializer<Channel> {
 
     @Override
-    protected void initChannel(SocketChannel ch) {
+    protected void initChannel(Channel ch) {
         ChannelPipeline pipeline = ch.pipeline();
+        if (TransportConfig.isFlushConsolidation()) {
+            pipeline.addLast("Flush Consolidation", TransportConfig.newFlushConsolidationHandler());
+        }
         pipeline.addLast("Message Encoder", new RpcEncoder());
         pipeline.addLast("Message Decoder", new RpcDecoder());
-        pipeline.addLast("clientHandler", new RpcClientSyncHandler());
+        pipeline.addLast("clientHandler", new RpcClientHandler());
     }
 }
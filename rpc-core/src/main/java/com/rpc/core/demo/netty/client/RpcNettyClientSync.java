@@ -17,24 +17,37 @@
 
 package com.rpc.core.demo.netty.client;
 
-import com.alibaba.fastjson.JSON;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.rpc.core.demo.api.ProviderInfo;
 import com.rpc.core.demo.api.RpcRequest;
 import com.rpc.core.demo.api.RpcResponse;
+import com.rpc.core.demo.exception.RetryableException;
+import com.rpc.core.demo.exception.RpcException;
+import com.rpc.core.demo.exception.RpcTimeoutException;
+import com.rpc.core.demo.filter.client.CircuitBreaker;
+import com.rpc.core.demo.filter.client.EndpointLimiter;
+import com.rpc.core.demo.netty.common.Deadline;
+import com.rpc.core.demo.netty.common.MessageType;
+import com.rpc.core.demo.netty.common.NettyTransport;
 import com.rpc.core.demo.netty.common.RpcProtocol;
+import com.rpc.core.demo.netty.common.Serializers;
 import io.netty.bootstrap.Bootstrap;
-import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.util.CharsetUtil;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.handler.codec.EncoderException;
 import lombok.extern.slf4j.Slf4j;
 
+import java.lang.reflect.Type;
+import java.net.SocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author lw1243925457
@@ -62,89 +75,282 @@ public class RpcNettyClientSync {
     }
 
     /**
-     * 使用Map来保存用过的Channel，看下次相同的后台服务是否能够重用，起一个类似缓存的作用
+     * 每个后台服务地址（host:port）对应一个连接池，连接在多次请求间复用
      */
-    private ConcurrentHashMap<String, Channel> channelPool = new ConcurrentHashMap<>();
-    private EventLoopGroup clientGroup = new NioEventLoopGroup(new ThreadFactoryBuilder().setNameFormat("client work-%d").build());
+    private final ConcurrentHashMap<String, EndpointChannelPool> channelPools = new ConcurrentHashMap<>();
+    /**
+     * 请求ID生成器
+     */
+    private final AtomicLong requestId = new AtomicLong();
+    private EventLoopGroup clientGroup = NettyTransport.newEventLoopGroup(0,
+            new ThreadFactoryBuilder().setNameFormat("client work-%d").build());
+    private final Bootstrap bootstrap = createBootstrap();
+    private Bootstrap domainSocketBootstrap;
 
     private RpcNettyClientSync() {
+        long idleTimeout = ChannelPoolConfig.getIdleTimeoutMillis();
+        clientGroup.scheduleAtFixedRate(this::reapIdleChannels, idleTimeout, idleTimeout, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * 调用channel发送请求，从handler中获取响应结果
+     * 调用channel发送请求，阻塞等待handler中对应请求ID的响应结果
+     * @param resultType 调用方法的返回类型
      * @return 响应
      * @throws InterruptedException exception
+     * @throws ExecutionException exception
      */
-    public RpcResponse getResponse(RpcRequest rpcRequest, String url) throws InterruptedException,
-            URISyntaxException {
-        RpcProtocol request = convertNettyRequest(rpcRequest);
+    public RpcResponse<Object> getResponse(RpcRequest rpcRequest, String url, Type resultType)
+            throws InterruptedException, ExecutionException, URISyntaxException {
+        return sendRequest(rpcRequest, url, resultType).get();
+    }
 
-        URI uri = new URI(url);
-        String cacheKey = uri.getHost() + ":" + uri.getPort();
-
-        // 查看缓存池中是否有可重用的channel
-        if (channelPool.containsKey(cacheKey)) {
-            Channel channel = channelPool.get(cacheKey);
-            if (!channel.isActive() || !channel.isWritable() || !channel.isOpen()) {
-                log.debug("Channel can't reuse");
-            } else {
-                try {
-                    RpcClientSyncHandler handler = new RpcClientSyncHandler();
-                    handler.setLatch(new CountDownLatch(1));
-                    channel.pipeline().replace("clientHandler", "clientHandler", handler);
-                    channel.writeAndFlush(request).sync();
-                    return handler.getResponse();
-                } catch (Exception e) {
-                    log.debug("channel reuse send msg failed!");
-                    channel.close();
-                    channelPool.remove(cacheKey);
-                }
-                log.debug("Handler is busy, please user new channel");
+    /**
+     * 从连接池中取在途请求最少的channel发送请求，返回对应请求ID的响应Future
+     * 同一个连接上可以同时有多个请求在途，响应通过请求ID匹配
+     * @param resultType 调用方法的返回类型，响应中的结果按这个类型反序列化
+     * @return 响应Future
+     * @throws URISyntaxException exception
+     */
+    public CompletableFuture<RpcResponse<Object>> sendRequest(RpcRequest rpcRequest, String url, Type resultType)
+            throws URISyntaxException {
+        return sendRequest(rpcRequest, channelPool(url), resultType, null);
+    }
+
+    /**
+     * 发送请求到 Provider，使用 Provider 上缓存的连接地址和连接池key，不再解析url
+     * @param provider 负载均衡选出的 Provider
+     * @param resultType 调用方法的返回类型，响应中的结果按这个类型反序列化
+     * @return 响应Future
+     */
+    public CompletableFuture<RpcResponse<Object>> sendRequest(RpcRequest rpcRequest, ProviderInfo provider, Type resultType) {
+        return sendRequest(rpcRequest, provider, resultType, null);
+    }
+
+    /**
+     * 发送带截止时间的请求，发送时把剩余的超时时间放入请求，服务端据此丢弃已经超时的请求
+     * 开启了地址的在途请求限制时，达到限制的请求不发送，以可重试异常结束，换一个 Provider
+     * 地址的熔断器打开（或者半开时探测名额已经用完）时同样不发送
+     * @param provider 负载均衡选出的 Provider
+     * @param resultType 调用方法的返回类型，响应中的结果按这个类型反序列化
+     * @param deadline 调用的截止时间，可以为 null
+     * @return 响应Future
+     */
+    public CompletableFuture<RpcResponse<Object>> sendRequest(RpcRequest rpcRequest, ProviderInfo provider, Type resultType,
+                                                              Deadline deadline) {
+        EndpointLimiter limiter = EndpointLimiter.forEndpoint(provider);
+        if (limiter != null && !limiter.tryAcquire()) {
+            return failed(new RetryableException("Provider saturated: " + provider.getUrl() + ", " + limiter));
+        }
+        CircuitBreaker breaker = CircuitBreaker.forEndpoint(provider);
+        CircuitBreaker.Permit permit = breaker == null ? null : breaker.tryAcquire();
+        if (permit != null && !permit.isAcquired()) {
+            if (limiter != null) {
+                limiter.release();
             }
+            return failed(new RetryableException("Circuit open: " + breaker));
+        }
+        EndpointChannelPool pool = channelPools.get(provider.endpointKey());
+        if (pool == null) {
+            pool = channelPools.computeIfAbsent(provider.endpointKey(), key -> newPool(provider.socketAddress()));
+        }
+        long startNanos = System.nanoTime();
+        CompletableFuture<RpcResponse<Object>> result = sendRequest(rpcRequest, pool, resultType, deadline);
+        if (limiter != null || breaker != null) {
+            result.whenComplete((response, cause) -> {
+                // 主动取消的请求（没有超时）不是 Provider 的问题，只归还许可
+                boolean cancelled = result.isCancelled() && (deadline == null || !deadline.isExpired());
+                if (limiter != null) {
+                    if (cancelled) {
+                        limiter.release();
+                    } else if (cause == null) {
+                        limiter.onSuccess();
+                    } else {
+                        limiter.onDrop();
+                    }
+                }
+                if (breaker != null) {
+                    if (cancelled) {
+                        breaker.release(permit);
+                    } else {
+                        breaker.onResult(permit, cause == null, System.nanoTime() - startNanos);
+                    }
+                }
+            });
         }
+        return result;
+    }
+
+    private static CompletableFuture<RpcResponse<Object>> failed(Throwable cause) {
+        CompletableFuture<RpcResponse<Object>> result = new CompletableFuture<>();
+        result.completeExceptionally(cause);
+        return result;
+    }
+
+    /**
+     * 返回的Future被取消时（如对冲请求中较慢的一个），移除在途请求，之后到达的响应直接丢弃
+     */
+    private CompletableFuture<RpcResponse<Object>> sendRequest(RpcRequest rpcRequest, EndpointChannelPool pool,
+                                                               Type resultType, Deadline deadline) {
+        CompletableFuture<RpcResponse<Object>> result = new CompletableFuture<>();
+        pool.acquire().whenComplete((channel, throwable) -> {
+            if (throwable != null) {
+                result.completeExceptionally(throwable);
+                return;
+            }
+            if (result.isDone()) {
+                return;
+            }
+            // 建立连接期间已经超时的请求不再发送
+            if (deadline != null && deadline.isExpired()) {
+                result.completeExceptionally(new RpcTimeoutException("Invoke timeout before send"));
+                return;
+            }
+            RpcClientHandler handler = EndpointChannelPool.handler(channel);
+            if (handler == null) {
+                result.completeExceptionally(new RetryableException("Channel closed: " + channel));
+                return;
+            }
+            RpcProtocol request = convertNettyRequest(MessageType.REQUEST, rpcRequest, handler);
+            if (deadline != null) {
+                request.setTimeoutMillis(deadline.remainingMillis());
+            }
+            CompletableFuture<RpcResponse<Object>> future = handler.register(request.getId(), resultType);
+            future.whenComplete((response, cause) -> {
+                if (cause != null) {
+                    result.completeExceptionally(cause);
+                } else {
+                    result.complete(response);
+                }
+            });
+            result.whenComplete((response, cause) -> {
+                if (result.isCancelled()) {
+                    handler.cancel(request.getId());
+                }
+            });
+            // 不等待写完成，发送失败时通过监听器让对应的Future异常结束
+            channel.writeAndFlush(request).addListener((ChannelFutureListener) writeFuture -> {
+                if (writeFuture.isSuccess()) {
+                    return;
+                }
+                log.debug("channel send msg failed!");
+                if (writeFuture.cause() instanceof EncoderException) {
+                    // 编码失败（如参数无法序列化）时没有写出任何数据，连接上的其他请求不受影响，不关闭连接；
+                    // 换一个 Provider 结果相同，不重试
+                    handler.fail(request.getId(), new RpcException("Encode request failed", writeFuture.cause()));
+                    return;
+                }
+                handler.fail(request.getId(), new RetryableException("Send request failed", writeFuture.cause()));
+                writeFuture.channel().close();
+            });
+        });
+        return result;
+    }
 
-        // 没有或者不可用则新建
-        // 并将最终的handler添加到pipeline中，拿到结果后返回
-        RpcClientSyncHandler handler = new RpcClientSyncHandler();
-        handler.setLatch(new CountDownLatch(1));
+    /**
+     * 发送单向请求：服务端只执行不返回响应，Future 在请求写出后完成
+     * @return 写出结果
+     * @throws URISyntaxException exception
+     */
+    public CompletableFuture<Void> sendOneway(RpcRequest rpcRequest, String url) throws URISyntaxException {
+        return channelPool(url).acquire().thenCompose(channel -> {
+            RpcProtocol request = convertNettyRequest(MessageType.ONEWAY, rpcRequest, EndpointChannelPool.handler(channel));
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            channel.writeAndFlush(request).addListener((ChannelFutureListener) writeFuture -> {
+                if (writeFuture.isSuccess()) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(new RpcException("Send request failed", writeFuture.cause()));
+                }
+            });
+            return future;
+        });
+    }
+
+    /**
+     * 地址对应的连接池，Unix domain socket 按文件路径区分，TCP 按 host:port 区分
+     * @param url provider url
+     * @return channel pool
+     * @throws URISyntaxException exception
+     */
+    private EndpointChannelPool channelPool(String url) throws URISyntaxException {
+        URI uri = new URI(url);
+        return channelPools.computeIfAbsent(NettyTransport.endpointKey(uri), key -> newPool(NettyTransport.toSocketAddress(uri)));
+    }
 
-        Channel channel = createChannel(uri.getHost(), uri.getPort());
-        channel.pipeline().replace("clientHandler", "clientHandler", handler);
-        channelPool.put(cacheKey, channel);
+    /**
+     * 定时回收各个连接池中的空闲连接
+     */
+    private void reapIdleChannels() {
+        long now = System.currentTimeMillis();
+        for (EndpointChannelPool pool: channelPools.values()) {
+            pool.reapIdle(now);
+        }
+    }
 
-        channel.writeAndFlush(request).sync();
-        return handler.getResponse();
+    /**
+     * 新建地址对应的连接池，Unix domain socket 地址使用单独的 Bootstrap
+     * @param address provider address
+     * @return channel pool
+     */
+    private EndpointChannelPool newPool(SocketAddress address) {
+        if (address instanceof DomainSocketAddress) {
+            return new EndpointChannelPool(address, domainSocketBootstrap());
+        }
+        return new EndpointChannelPool(address, bootstrap);
     }
 
     /**
-     * 返回新的Channel
-     * @param address ip地址
-     * @param port 端口
-     * @return channel
-     * @throws InterruptedException exception
+     * 所有TCP连接共用的 Bootstrap
+     * @return bootstrap
      */
-    private Channel createChannel(String address, int port) throws InterruptedException {
+    private Bootstrap createBootstrap() {
         Bootstrap bootstrap = new Bootstrap();
         bootstrap.group(clientGroup)
                 .option(ChannelOption.SO_REUSEADDR, true)
                 .option(ChannelOption.TCP_NODELAY, true)
                 .option(ChannelOption.AUTO_CLOSE, true)
                 .option(ChannelOption.SO_KEEPALIVE, true)
-                .channel(NioSocketChannel.class)
+                .channel(NettyTransport.socketChannelClass())
                 .handler(new RpcClientInitializer());
-        return bootstrap.connect(address, port).sync().channel();
+        NettyTransport.configureEpollMode(bootstrap);
+        return bootstrap;
     }
 
     /**
-     * 将 {@RpcRequest} 转成 netty 自定义的通信格式 {@RpcProtocol}
+     * Unix domain socket 连接共用的 Bootstrap，第一次使用时创建，只有 native epoll 下可用
+     * @return bootstrap
+     */
+    private synchronized Bootstrap domainSocketBootstrap() {
+        if (domainSocketBootstrap == null) {
+            Bootstrap bootstrap = new Bootstrap();
+            bootstrap.group(clientGroup)
+                    .option(ChannelOption.AUTO_CLOSE, true)
+                    .channel(NettyTransport.domainSocketChannelClass())
+                    .handler(new RpcClientInitializer());
+            NettyTransport.configureEpollMode(bootstrap);
+            domainSocketBootstrap = bootstrap;
+        }
+        return domainSocketBootstrap;
+    }
+
+    /**
+     * 将 {@RpcRequest} 转成 netty 自定义的通信格式 {@RpcProtocol}，使用服务配置的序列化方式
+     * 连接握手时拿到了方法ID的，只发送方法ID和参数
+     * @param type REQUEST or ONEWAY
      * @param rpcRequest RpcRequest
+     * @param handler 发送连接的 handler，可能为空
      * @return RpcProtocol
      */
-    private RpcProtocol convertNettyRequest(RpcRequest rpcRequest) {
-        RpcProtocol request = new RpcProtocol();
-        String requestJson = JSON.toJSONString(rpcRequest);
-        request.setLen(requestJson.getBytes(CharsetUtil.UTF_8).length);
-        request.setContent(requestJson.getBytes(CharsetUtil.UTF_8));
+    private RpcProtocol convertNettyRequest(MessageType type, RpcRequest rpcRequest, RpcClientHandler handler) {
+        byte serializer = Serializers.forService(rpcRequest.getServiceClass()).getId();
+        Integer methodId = handler == null || rpcRequest.getParameterTypes() == null
+                ? null
+                : handler.methodId(rpcRequest.methodKey());
+
+        RpcProtocol request = methodId == null
+                ? RpcProtocol.withBody(type, rpcRequest, serializer)
+                : RpcProtocol.withMethodId(type, methodId, rpcRequest.getArgv(), serializer);
+        request.setId(requestId.incrementAndGet());
         return request;
     }
 
@@ -152,6 +358,9 @@ public class RpcNettyClientSync {
      * 关闭线程池
      */
     public void destroy() {
+        for (EndpointChannelPool pool: channelPools.values()) {
+            pool.close();
+        }
         clientGroup.shutdownGracefully();
     }
 }
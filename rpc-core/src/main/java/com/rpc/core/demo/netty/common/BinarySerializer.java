@@ -0,0 +1,606 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.netty.common;
+
+import com.google.common.primitives.Primitives;
+import com.rpc.core.demo.api.RpcRequest;
+import com.rpc.core.demo.api.RpcResponse;
+import com.rpc.core.demo.exception.RpcException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.util.CharsetUtil;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 紧凑的二进制序列化
+ * 自描述、不需要预先定义 schema：每个值前一个字节的类型标记，整数使用 zigzag varint，
+ * 对象写类名（同一条消息中重复的类名只写序号）加按字段名排序的字段值；不支持循环引用
+ *
+ * 数据中的类名来自对端，不能信任：反序列化只加载白名单中的类（基本类型和包装类、服务方法签名中出现的类及其字段类型、
+ * 显式允许的包），每个值按字段（或根对象）声明的类型检查，类型不符时在创建对象之前失败；
+ * 对象通过无参构造函数创建（可以不是 public），再按字段名设置字段值
+ *
+ * @author lw1243925457
+ */
+public class BinarySerializer implements Serializer {
+
+    public static final byte ID = 2;
+    public static final String NAME = "binary";
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte BYTE = 3;
+    private static final byte SHORT = 4;
+    private static final byte INT = 5;
+    private static final byte LONG = 6;
+    private static final byte FLOAT = 7;
+    private static final byte DOUBLE = 8;
+    private static final byte CHAR = 9;
+    private static final byte STRING = 10;
+    private static final byte BYTES = 11;
+    private static final byte LIST = 12;
+    private static final byte SET = 13;
+    private static final byte MAP = 14;
+    private static final byte ARRAY = 15;
+    private static final byte ENUM = 16;
+    private static final byte DATE = 17;
+    private static final byte BIG_DECIMAL = 18;
+    private static final byte BIG_INTEGER = 19;
+    private static final byte EXCEPTION = 20;
+    private static final byte OBJECT = 21;
+
+    /**
+     * 可以直接按名称加载的 JDK 类：基本类型、包装类和作为数组元素类型出现的常用类型
+     */
+    private static final Map<String, Class<?>> JDK_CLASSES = new HashMap<>();
+
+    /**
+     * 允许反序列化的类名，服务注册和客户端第一次调用时按方法签名登记
+     */
+    private static final Set<String> ALLOWED_CLASSES = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 允许反序列化的包（类名前缀），用于字段声明为 Object 或者父类型时实际传输的子类
+     */
+    private static final List<String> ALLOWED_PACKAGES = new CopyOnWriteArrayList<>();
+
+    static {
+        for (Class<?> clazz : new Class<?>[]{boolean.class, byte.class, short.class, int.class, long.class,
+                float.class, double.class, char.class, Boolean.class, Byte.class, Short.class, Integer.class,
+                Long.class, Float.class, Double.class, Character.class, String.class, Object.class, Number.class,
+                Date.class, BigDecimal.class, BigInteger.class, List.class, Set.class, Map.class, Collection.class}) {
+            JDK_CLASSES.put(clazz.getName(), clazz);
+        }
+        allowType(RpcRequest.class);
+        allowType(RpcResponse.class);
+        allowPackage("com.rpc.core.demo.exception.");
+    }
+
+    private final Map<Class<?>, Field[]> fieldsCache = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Constructor<?>> constructorCache = new ConcurrentHashMap<>();
+    private final Map<String, Class<?>> classCache = new ConcurrentHashMap<>();
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void serialize(Object object, ByteBuf out) {
+        writeValue(object, out, new HashMap<>());
+    }
+
+    /**
+     * 根对象必须是 type 对应的类型
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> T deserialize(ByteBuf in, Type type) {
+        ByteBuf data = in.duplicate();
+        return (T) readValue(data, new ArrayList<>(), rawClass(type));
+    }
+
+    /**
+     * 允许反序列化一个类型：类本身、泛型参数、数组元素类型，以及这些类的字段类型（递归），JDK 中的类不登记
+     * @param type type
+     */
+    public static void allowType(Type type) {
+        if (type instanceof Class) {
+            allowClass((Class<?>) type);
+        } else if (type instanceof ParameterizedType) {
+            allowType(((ParameterizedType) type).getRawType());
+            for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+                allowType(argument);
+            }
+        } else if (type instanceof GenericArrayType) {
+            allowType(((GenericArrayType) type).getGenericComponentType());
+        } else if (type instanceof WildcardType) {
+            for (Type bound : ((WildcardType) type).getUpperBounds()) {
+                allowType(bound);
+            }
+        }
+    }
+
+    /**
+     * 允许反序列化服务方法的参数、返回值和声明的异常类型
+     * @param method service method
+     */
+    public static void allowTypes(Method method) {
+        for (Type type : method.getGenericParameterTypes()) {
+            allowType(type);
+        }
+        allowType(method.getGenericReturnType());
+        for (Class<?> exceptionType : method.getExceptionTypes()) {
+            allowType(exceptionType);
+        }
+    }
+
+    /**
+     * 允许反序列化一个包下的所有类
+     * @param prefix 包名前缀，如 com.rpc.demo.model.
+     */
+    public static void allowPackage(String prefix) {
+        if (!ALLOWED_PACKAGES.contains(prefix)) {
+            ALLOWED_PACKAGES.add(prefix);
+        }
+    }
+
+    private static void allowClass(Class<?> clazz) {
+        while (clazz.isArray()) {
+            clazz = clazz.getComponentType();
+        }
+        String name = clazz.getName();
+        if (clazz.isPrimitive() || name.startsWith("java.") || name.startsWith("javax.") || !ALLOWED_CLASSES.add(name)) {
+            return;
+        }
+        for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
+                    allowType(field.getGenericType());
+                }
+            }
+        }
+    }
+
+    private static boolean isAllowed(String name) {
+        if (ALLOWED_CLASSES.contains(name)) {
+            return true;
+        }
+        for (String prefix : ALLOWED_PACKAGES) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Class<?> rawClass(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        }
+        if (type instanceof ParameterizedType) {
+            return rawClass(((ParameterizedType) type).getRawType());
+        }
+        return Object.class;
+    }
+
+    private void writeValue(Object value, ByteBuf out, Map<Class<?>, Integer> classRefs) {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString((String) value, out);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            writeVarLong(zigzag((Integer) value), out);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            writeVarLong(zigzag((Long) value), out);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Character) {
+            out.writeByte(CHAR);
+            out.writeChar((Character) value);
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            out.writeByte(BYTES);
+            writeVarLong(bytes.length, out);
+            out.writeBytes(bytes);
+        } else if (value instanceof List) {
+            out.writeByte(LIST);
+            writeElements((Collection<?>) value, out, classRefs);
+        } else if (value instanceof Set) {
+            out.writeByte(SET);
+            writeElements((Collection<?>) value, out, classRefs);
+        } else if (value instanceof Collection) {
+            out.writeByte(LIST);
+            writeElements((Collection<?>) value, out, classRefs);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(MAP);
+            writeVarLong(map.size(), out);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(entry.getKey(), out, classRefs);
+                writeValue(entry.getValue(), out, classRefs);
+            }
+        } else if (value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            out.writeByte(ARRAY);
+            writeClass(value.getClass().getComponentType(), out, classRefs);
+            writeVarLong(length, out);
+            for (int i = 0; i < length; i++) {
+                writeValue(Array.get(value, i), out, classRefs);
+            }
+        } else if (value instanceof Enum) {
+            out.writeByte(ENUM);
+            writeClass(((Enum<?>) value).getDeclaringClass(), out, classRefs);
+            writeString(((Enum<?>) value).name(), out);
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            writeVarLong(zigzag(((Date) value).getTime()), out);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(BIG_DECIMAL);
+            writeString(value.toString(), out);
+        } else if (value instanceof BigInteger) {
+            out.writeByte(BIG_INTEGER);
+            writeString(value.toString(), out);
+        } else if (value instanceof Throwable) {
+            // 异常只传类型和信息，JDK 内部字段在高版本中无法反射访问
+            out.writeByte(EXCEPTION);
+            writeClass(value.getClass(), out, classRefs);
+            writeValue(((Throwable) value).getMessage(), out, classRefs);
+        } else {
+            out.writeByte(OBJECT);
+            writeClass(value.getClass(), out, classRefs);
+            try {
+                for (Field field : fields(value.getClass())) {
+                    writeValue(field.get(value), out, classRefs);
+                }
+            } catch (IllegalAccessException e) {
+                throw new RpcException("Serialize " + value.getClass().getName() + " failed", e);
+            }
+        }
+    }
+
+    private void writeElements(Collection<?> collection, ByteBuf out, Map<Class<?>, Integer> classRefs) {
+        writeVarLong(collection.size(), out);
+        for (Object element : collection) {
+            writeValue(element, out, classRefs);
+        }
+    }
+
+    /**
+     * 类名在同一条消息中第一次出现时写完整名称（序号 0），之后只写序号（从 1 开始）
+     */
+    private void writeClass(Class<?> clazz, ByteBuf out, Map<Class<?>, Integer> classRefs) {
+        Integer ref = classRefs.get(clazz);
+        if (ref != null) {
+            writeVarLong(ref, out);
+            return;
+        }
+        classRefs.put(clazz, classRefs.size() + 1);
+        writeVarLong(0, out);
+        writeString(clazz.getName(), out);
+    }
+
+    /**
+     * 读取一个值，值必须是 expected 类型（基本类型按包装类型比较）
+     */
+    private Object readValue(ByteBuf in, List<String> classRefs, Class<?> expected) {
+        Object value = readTagged(in, classRefs, Primitives.wrap(expected));
+        if (value != null && !Primitives.wrap(expected).isInstance(value)) {
+            throw new RpcException("Binary value " + value.getClass().getName() + " is not a " + expected.getName());
+        }
+        return value;
+    }
+
+    private Object readTagged(ByteBuf in, List<String> classRefs, Class<?> expected) {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case BYTE:
+                return in.readByte();
+            case SHORT:
+                return in.readShort();
+            case INT:
+                return (int) unzigzag(readVarLong(in));
+            case LONG:
+                return unzigzag(readVarLong(in));
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            case CHAR:
+                return in.readChar();
+            case STRING:
+                return readString(in);
+            case BYTES:
+                byte[] bytes = new byte[readLength(in)];
+                in.readBytes(bytes);
+                return bytes;
+            case LIST:
+                return readElements(in, new ArrayList<>(), classRefs);
+            case SET:
+                return readElements(in, new LinkedHashSet<>(), classRefs);
+            case MAP:
+                int size = readLength(in);
+                Map<Object, Object> map = new LinkedHashMap<>(size * 4 / 3 + 1);
+                for (int i = 0; i < size; i++) {
+                    map.put(readValue(in, classRefs, Object.class), readValue(in, classRefs, Object.class));
+                }
+                return map;
+            case ARRAY:
+                Class<?> componentType = readClass(in, classRefs);
+                int length = readLength(in);
+                Object array = Array.newInstance(componentType, length);
+                for (int i = 0; i < length; i++) {
+                    Array.set(array, i, readValue(in, classRefs, componentType));
+                }
+                return array;
+            case ENUM:
+                return readEnum(checkType(readClass(in, classRefs), expected), readString(in));
+            case DATE:
+                return new Date(unzigzag(readVarLong(in)));
+            case BIG_DECIMAL:
+                return new BigDecimal(readString(in));
+            case BIG_INTEGER:
+                return new BigInteger(readString(in));
+            case EXCEPTION:
+                String exceptionClass = readClassName(in, classRefs);
+                return readException(exceptionClass, (String) readValue(in, classRefs, String.class));
+            case OBJECT:
+                return readObject(in, classRefs, expected);
+            default:
+                throw new RpcException("Unknown binary type tag: " + tag);
+        }
+    }
+
+    private Collection<Object> readElements(ByteBuf in, Collection<Object> collection, List<String> classRefs) {
+        int size = readLength(in);
+        for (int i = 0; i < size; i++) {
+            collection.add(readValue(in, classRefs, Object.class));
+        }
+        return collection;
+    }
+
+    /**
+     * 先检查类型再创建对象，字段值按字段声明的类型读取
+     */
+    private Object readObject(ByteBuf in, List<String> classRefs, Class<?> expected) {
+        Class<?> clazz = checkType(readClass(in, classRefs), expected);
+        try {
+            Object object = constructor(clazz).newInstance();
+            for (Field field : fields(clazz)) {
+                field.set(object, readValue(in, classRefs, field.getType()));
+            }
+            return object;
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            throw new RpcException("Deserialize " + clazz.getName() + " failed", e);
+        }
+    }
+
+    private static Class<?> checkType(Class<?> clazz, Class<?> expected) {
+        if (!expected.isAssignableFrom(clazz)) {
+            throw new RpcException("Binary value " + clazz.getName() + " is not a " + expected.getName());
+        }
+        return clazz;
+    }
+
+    private Constructor<?> constructor(Class<?> clazz) {
+        Constructor<?> constructor = constructorCache.get(clazz);
+        if (constructor != null) {
+            return constructor;
+        }
+        if (clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers())) {
+            throw new RpcException("Can't instantiate " + clazz.getName());
+        }
+        try {
+            constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (NoSuchMethodException e) {
+            throw new RpcException(clazz.getName() + " needs a no-arg constructor for binary serialization", e);
+        }
+        constructorCache.put(clazz, constructor);
+        return constructor;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object readEnum(Class<?> clazz, String name) {
+        return Enum.valueOf((Class<? extends Enum>) clazz, name);
+    }
+
+    /**
+     * 只创建白名单中的异常类，其他异常（如 JDK 中的异常）不加载，转成带原类名的 RpcException
+     */
+    private Object readException(String className, String message) {
+        if (!isAllowed(className)) {
+            return new RpcException(className + ": " + message);
+        }
+        Class<?> clazz = resolveClass(className);
+        if (!Throwable.class.isAssignableFrom(clazz)) {
+            throw new RpcException("Binary value " + className + " is not a " + Throwable.class.getName());
+        }
+        try {
+            Constructor<?> constructor = clazz.getConstructor(String.class);
+            return constructor.newInstance(message);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return new RpcException(className + ": " + message);
+        }
+    }
+
+    private Class<?> readClass(ByteBuf in, List<String> classRefs) {
+        return resolveClass(readClassName(in, classRefs));
+    }
+
+    private String readClassName(ByteBuf in, List<String> classRefs) {
+        int ref = readLength(in);
+        if (ref > 0) {
+            if (ref > classRefs.size()) {
+                throw new RpcException("Malformed class reference: " + ref);
+            }
+            return classRefs.get(ref - 1);
+        }
+        String name = readString(in);
+        classRefs.add(name);
+        return name;
+    }
+
+    private Class<?> resolveClass(String name) {
+        Class<?> clazz = classCache.get(name);
+        if (clazz == null) {
+            clazz = loadClass(name);
+            classCache.put(name, clazz);
+        }
+        return clazz;
+    }
+
+    /**
+     * 只加载 JDK 常用类和白名单中的类，加载时不初始化
+     */
+    private Class<?> loadClass(String name) {
+        Class<?> jdkClass = JDK_CLASSES.get(name);
+        if (jdkClass != null) {
+            return jdkClass;
+        }
+        if (!isAllowed(name)) {
+            throw new RpcException("Class not allowed for binary deserialization: " + name);
+        }
+        try {
+            return Class.forName(name, false, Thread.currentThread().getContextClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new RpcException("Class not found: " + name, e);
+        }
+    }
+
+    /**
+     * 对象的字段：包含父类，排除 static 和 transient，按名称排序保证两端顺序一致
+     */
+    private Field[] fields(Class<?> clazz) {
+        Field[] fields = fieldsCache.get(clazz);
+        if (fields != null) {
+            return fields;
+        }
+        List<Field> list = new ArrayList<>();
+        for (Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                    continue;
+                }
+                field.setAccessible(true);
+                list.add(field);
+            }
+        }
+        fields = list.toArray(new Field[0]);
+        Arrays.sort(fields, Comparator.comparing(Field::getName).thenComparing(f -> f.getDeclaringClass().getName()));
+        fieldsCache.put(clazz, fields);
+        return fields;
+    }
+
+    private static void writeString(String value, ByteBuf out) {
+        writeVarLong(ByteBufUtil.utf8Bytes(value), out);
+        ByteBufUtil.writeUtf8(out, value);
+    }
+
+    private static String readString(ByteBuf in) {
+        return in.readCharSequence(readLength(in), CharsetUtil.UTF_8).toString();
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(long value, ByteBuf out) {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(ByteBuf in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new RpcException("Malformed varint");
+    }
+
+    private static int readLength(ByteBuf in) {
+        long length = readVarLong(in);
+        if (length < 0 || length > in.readableBytes()) {
+            throw new RpcException("Malformed length: " + length);
+        }
+        return (int) length;
+    }
+}
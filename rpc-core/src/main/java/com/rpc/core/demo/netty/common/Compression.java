@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.netty.common;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.compression.Snappy;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 数据内容的压缩方式，使用的方式写在帧头 flags 的低两位
+ * 每个帧同时在 flags 中声明本端能解压的方式，收到对端的帧后记录在连接上，
+ * 发送时只有对端声明过能解压才进行压缩，这样每个连接单独协商，老版本的对端不会收到压缩数据
+ *
+ * @author lw1243925457
+ */
+public enum Compression {
+
+    /**
+     * 不压缩
+     */
+    NONE((byte) 0) {
+        @Override
+        void compress(ByteBuf in, ByteBuf out) {
+            out.writeBytes(in);
+        }
+
+        @Override
+        void decompress(ByteBuf in, ByteBuf out, int maxLength) {
+            out.writeBytes(in);
+        }
+    },
+
+    /**
+     * Snappy：速度优先，使用 netty 自带的实现
+     * netty 的 Snappy 用 short 记录匹配位置，一次只能压缩 32KB，数据内容按 32KB 分块压缩，
+     * 每块前面写 4 字节的压缩后长度（和 SnappyFrameEncoder 的分块方式相同）
+     */
+    SNAPPY((byte) 1) {
+        @Override
+        void compress(ByteBuf in, ByteBuf out) {
+            Snappy snappy = new Snappy();
+            while (in.isReadable()) {
+                int lengthIndex = out.writerIndex();
+                out.writeInt(0);
+                // Snappy.encode 按 readerIndex 为 0 计算块边界，所以每块先切片再编码
+                ByteBuf block = in.readSlice(Math.min(in.readableBytes(), SNAPPY_BLOCK_SIZE));
+                snappy.encode(block, out, block.readableBytes());
+                out.setInt(lengthIndex, out.writerIndex() - lengthIndex - 4);
+                snappy.reset();
+            }
+        }
+
+        @Override
+        void decompress(ByteBuf in, ByteBuf out, int maxLength) {
+            Snappy snappy = new Snappy();
+            while (in.isReadable()) {
+                if (in.readableBytes() < 4) {
+                    throw new CorruptedFrameException("Truncated snappy block length");
+                }
+                int length = in.readInt();
+                if (length <= 0 || length > in.readableBytes()) {
+                    throw new CorruptedFrameException("Illegal snappy block length: " + length);
+                }
+                ByteBuf block = in.readSlice(length);
+                // 先检查块头部记录的原始长度，避免恶意数据导致分配过大的内存
+                checkLength(out.readableBytes() + snappyUncompressedLength(block), maxLength);
+                snappy.decode(block, out);
+                if (block.isReadable()) {
+                    throw new CorruptedFrameException("Illegal snappy block");
+                }
+                snappy.reset();
+            }
+        }
+    },
+
+    /**
+     * Deflate：压缩率优先，JDK 自带，作为 Snappy 不可用时的备选
+     */
+    DEFLATE((byte) 2) {
+        @Override
+        void compress(ByteBuf in, ByteBuf out) {
+            Deflater deflater = DEFLATERS.get();
+            deflater.reset();
+            deflater.setInput(toArray(in));
+            deflater.finish();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int size = deflater.deflate(buffer);
+                out.writeBytes(buffer, 0, size);
+            }
+        }
+
+        @Override
+        void decompress(ByteBuf in, ByteBuf out, int maxLength) {
+            Inflater inflater = INFLATERS.get();
+            inflater.reset();
+            inflater.setInput(toArray(in));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try {
+                while (!inflater.finished()) {
+                    int size = inflater.inflate(buffer);
+                    if (size == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new CorruptedFrameException("Truncated deflate data");
+                    }
+                    checkLength(out.readableBytes() + size, maxLength);
+                    out.writeBytes(buffer, 0, size);
+                }
+            } catch (DataFormatException e) {
+                throw new CorruptedFrameException("Illegal deflate data", e);
+            }
+        }
+    };
+
+    /**
+     * flags 中表示数据内容压缩方式的位
+     */
+    public static final int FLAG_MASK = 0x03;
+
+    /**
+     * flags 中声明能解压哪些方式的位
+     */
+    public static final int ACCEPT_MASK = SNAPPY.acceptFlag() | DEFLATE.acceptFlag();
+
+    /**
+     * 连接上记录的对端能解压的方式（对端帧头 flags 中的声明位）
+     */
+    public static final AttributeKey<Integer> PEER_ACCEPTS = AttributeKey.valueOf("rpc.peerAcceptCompression");
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Snappy 每块压缩前的最大长度
+     */
+    private static final int SNAPPY_BLOCK_SIZE = 32 * 1024;
+
+    private static final FastThreadLocal<Deflater> DEFLATERS = new FastThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED);
+        }
+
+        @Override
+        protected void onRemoval(Deflater value) {
+            value.end();
+        }
+    };
+
+    private static final FastThreadLocal<Inflater> INFLATERS = new FastThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+
+        @Override
+        protected void onRemoval(Inflater value) {
+            value.end();
+        }
+    };
+
+    private final byte code;
+
+    Compression(byte code) {
+        this.code = code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * @return flags 中声明本端能解压这种方式的位
+     */
+    public int acceptFlag() {
+        return code == 0 ? 0 : 1 << (1 + code);
+    }
+
+    /**
+     * 压缩 in 中的全部可读数据写入 out
+     * @param in 原始数据
+     * @param out 压缩后的数据
+     */
+    abstract void compress(ByteBuf in, ByteBuf out);
+
+    /**
+     * 解压 in 中的全部可读数据写入 out
+     * @param in 压缩数据
+     * @param out 原始数据
+     * @param maxLength 解压后的最大长度
+     */
+    abstract void decompress(ByteBuf in, ByteBuf out, int maxLength);
+
+    /**
+     * @param flags 帧头中的 flags
+     * @return 数据内容的压缩方式
+     */
+    public static Compression fromFlags(byte flags) {
+        switch (flags & FLAG_MASK) {
+            case 0:
+                return NONE;
+            case 1:
+                return SNAPPY;
+            case 2:
+                return DEFLATE;
+            default:
+                throw new CorruptedFrameException("Unknown compression flags: " + flags);
+        }
+    }
+
+    private static void checkLength(long length, int maxLength) {
+        if (length > maxLength) {
+            throw new CorruptedFrameException("Decompressed length " + length + " exceeds " + maxLength);
+        }
+    }
+
+    /**
+     * Snappy 数据开头是原始长度的 varint
+     */
+    private static long snappyUncompressedLength(ByteBuf in) {
+        long length = 0;
+        for (int i = 0; i < 5 && i < in.readableBytes(); i++) {
+            byte b = in.getByte(in.readerIndex() + i);
+            length |= (long) (b & 0x7F) << (7 * i);
+            if ((b & 0x80) == 0) {
+                return length;
+            }
+        }
+        throw new CorruptedFrameException("Illegal snappy preamble");
+    }
+
+    private static byte[] toArray(ByteBuf in) {
+        byte[] bytes = new byte[in.readableBytes()];
+        in.readBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.netty.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 调用的截止时间，基于 System.nanoTime，不受系统时钟调整影响
+ * 请求中只传递剩余的超时时间，服务端收到时按本地时间重新计算截止时间，不要求两端时钟同步
+ *
+ * 当前线程的截止时间保存在线程上下文中：服务端执行带截止时间的请求时设置，
+ * Provider 中再发起的 RPC 调用继承剩余的时间，超时在整条调用链上传递
+ *
+ * @author lw1243925457
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static Deadline after(long duration, TimeUnit unit) {
+        return new Deadline(System.nanoTime() + unit.toNanos(duration));
+    }
+
+    /**
+     * 当前线程上下文中的截止时间
+     * @return deadline，没有时返回 null
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 在截止时间的上下文中执行，嵌套时取更早的截止时间，执行完恢复原来的上下文
+     * @param deadline deadline, null 时直接执行
+     * @param call call
+     * @return result
+     */
+    public static <T> T call(Deadline deadline, Supplier<T> call) {
+        Deadline previous = CURRENT.get();
+        if (deadline == null) {
+            return call.get();
+        }
+        CURRENT.set(earliest(previous, deadline));
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public static void run(Deadline deadline, Runnable task) {
+        call(deadline, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return 两个截止时间中更早的一个，都为 null 时返回 null
+     */
+    public static Deadline earliest(Deadline first, Deadline second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        return first.deadlineNanos - second.deadlineNanos <= 0 ? first : second;
+    }
+
+    public long remainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+
+    /**
+     * 剩余的毫秒数，向上取整，已经超时返回 0
+     * @return remaining millis
+     */
+    public int remainingMillis() {
+        long remaining = remainingNanos();
+        if (remaining <= 0) {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, (remaining + 999_999) / 1_000_000);
+    }
+
+    public boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline(remaining " + TimeUnit.NANOSECONDS.toMillis(remainingNanos()) + "ms)";
+    }
+}
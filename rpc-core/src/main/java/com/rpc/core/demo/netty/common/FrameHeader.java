@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.netty.common;
+
+/**
+ * 固定长度的帧头定义，所有字段都在数据内容之前，不需要解析数据内容就能做路由和拒绝判断
+ * <pre>
+ * 0      2         3      4            5       6        7          8            16       20
+ * +------+---------+------+------------+-------+--------+----------+------------+--------+------
+ * | magic| version | type | serializer | flags | status | reserved | request id | length | body
+ * +------+---------+------+------------+-------+--------+----------+------------+--------+------
+ * </pre>
+ * length 为数据内容的长度，不包含帧头
+ * flags 中带 FLAG_METHOD_ID 时，帧头后紧跟 4 字节的方法ID（握手时服务端下发），数据内容只有参数数组，
+ * 方法ID不参与压缩，服务端不解析数据内容就能知道调用的是哪个方法
+ * flags 中带 FLAG_TIMEOUT 时，（方法ID之后）紧跟 4 字节的剩余超时时间（毫秒），服务端据此丢弃已经超时的请求
+ *
+ * @author lw1243925457
+ */
+public final class FrameHeader {
+
+    public static final short MAGIC = (short) 0xCAFE;
+
+    public static final byte VERSION = 1;
+
+    public static final int LENGTH = 20;
+
+    /**
+     * flags 字段在帧头中的位置，低两位为数据内容的压缩方式，其后为本端能解压的方式，见 Compression
+     */
+    public static final int FLAGS_OFFSET = 5;
+
+    /**
+     * flags：帧头后带方法ID
+     */
+    public static final int FLAG_METHOD_ID = 0x10;
+
+    /**
+     * 方法ID的长度
+     */
+    public static final int METHOD_ID_LENGTH = 4;
+
+    /**
+     * flags：帧头后带剩余超时时间
+     */
+    public static final int FLAG_TIMEOUT = 0x20;
+
+    /**
+     * 剩余超时时间的长度
+     */
+    public static final int TIMEOUT_LENGTH = 4;
+
+    /**
+     * 长度字段在帧头中的位置
+     */
+    public static final int LENGTH_OFFSET = 16;
+
+    /**
+     * 状态：正常
+     */
+    public static final byte STATUS_OK = 0;
+
+    /**
+     * 状态：服务端繁忙，请求被拒绝，没有数据内容
+     */
+    public static final byte STATUS_BUSY = 1;
+
+    /**
+     * 状态：客户端被禁止访问（黑名单），没有数据内容
+     */
+    public static final byte STATUS_FORBIDDEN = 2;
+
+    /**
+     * 状态：请求无法处理，例如不支持的序列化方式，没有数据内容
+     */
+    public static final byte STATUS_BAD_REQUEST = 3;
+
+    /**
+     * 状态：服务并发数超过限制，请求被拒绝，没有数据内容
+     */
+    public static final byte STATUS_OVERLOADED = 4;
+
+    private FrameHeader() {
+    }
+
+    /**
+     * @param status 帧头中的状态
+     * @return 状态说明
+     */
+    public static String statusMessage(byte status) {
+        switch (status) {
+            case STATUS_OK:
+                return "OK";
+            case STATUS_BUSY:
+                return "Server busy, request rejected";
+            case STATUS_FORBIDDEN:
+                return "back list";
+            case STATUS_BAD_REQUEST:
+                return "Bad request";
+            case STATUS_OVERLOADED:
+                return "Server overloaded, request shed";
+            default:
+                return "Unknown status: " + status;
+        }
+    }
+}
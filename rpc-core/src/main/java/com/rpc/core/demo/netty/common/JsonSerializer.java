@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.netty.common;
+
+import com.alibaba.fastjson.JSON;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.util.CharsetUtil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+
+/**
+ * JSON 序列化（fastjson）
+ * 反序列化直接读取 ByteBuf，序列化直接写入 ByteBuf，不经过中间的 String
+ *
+ * @author lw1243925457
+ */
+public class JsonSerializer implements Serializer {
+
+    public static final byte ID = 1;
+    public static final String NAME = "json";
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void serialize(Object object, ByteBuf out) {
+        try (ByteBufOutputStream outputStream = new ByteBufOutputStream(out)) {
+            JSON.writeJSONString(outputStream, object);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <T> T deserialize(ByteBuf in, Type type) {
+        if (in.hasArray()) {
+            return JSON.parseObject(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes(),
+                    CharsetUtil.UTF_8, type);
+        }
+        try (ByteBufInputStream inputStream = new ByteBufInputStream(in.duplicate())) {
+            return JSON.parseObject(inputStream, CharsetUtil.UTF_8, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
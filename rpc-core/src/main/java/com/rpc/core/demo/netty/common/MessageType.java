@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.netty.common;
+
+/**
+ * 消息类型，写在帧头中
+ *
+ * @author lw1243925457
+ */
+public enum MessageType {
+
+    /**
+     * 需要响应的请求
+     */
+    REQUEST((byte) 1),
+
+    /**
+     * 请求的响应
+     */
+    RESPONSE((byte) 2),
+
+    /**
+     * 心跳，服务端收到后原样返回一个心跳，没有数据内容
+     */
+    HEARTBEAT((byte) 3),
+
+    /**
+     * 单向请求，服务端执行但不返回响应
+     */
+    ONEWAY((byte) 4),
+
+    /**
+     * 握手：客户端连接建立后发送，服务端返回服务方法目录（方法key -> 方法ID），
+     * 之后这个连接上的请求只需要带方法ID和参数
+     */
+    HANDSHAKE((byte) 5);
+
+    private static final MessageType[] TYPES = new MessageType[8];
+
+    static {
+        for (MessageType type: values()) {
+            TYPES[type.code] = type;
+        }
+    }
+
+    private final byte code;
+
+    MessageType(byte code) {
+        this.code = code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * @param code 帧头中的类型
+     * @return message type，未知类型返回 null
+     */
+    public static MessageType valueOf(byte code) {
+        return code >= 0 && code < TYPES.length ? TYPES[code] : null;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.netty.common;
+
+import io.netty.bootstrap.AbstractBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 传输层选择：Linux 上 native epoll 可用时使用 epoll，否则退回 NIO
+ * 统一提供 EventLoopGroup、Channel 类型，以及 url 到连接地址的转换
+ *
+ * @author lw1243925457
+ */
+@Slf4j
+public class NettyTransport {
+
+    /**
+     * Unix domain socket 地址的 url 协议，如：unix:///tmp/rpc.sock
+     */
+    public static final String UNIX_SCHEME = "unix";
+
+    private NettyTransport() {
+    }
+
+    /**
+     * 是否使用 native epoll
+     * @return use epoll
+     */
+    public static boolean useEpoll() {
+        return TransportConfig.isNativeTransport() && Epoll.isAvailable();
+    }
+
+    public static EventLoopGroup newEventLoopGroup(int threads) {
+        return useEpoll() ? new EpollEventLoopGroup(threads) : new NioEventLoopGroup(threads);
+    }
+
+    public static EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+        return useEpoll() ? new EpollEventLoopGroup(threads, threadFactory)
+                : new NioEventLoopGroup(threads, threadFactory);
+    }
+
+    public static Class<? extends ServerChannel> serverChannelClass() {
+        return useEpoll() ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public static Class<? extends Channel> socketChannelClass() {
+        return useEpoll() ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    /**
+     * Unix domain socket 只有 native epoll 支持
+     * @return server domain socket channel class
+     */
+    public static Class<? extends ServerChannel> serverDomainSocketChannelClass() {
+        checkDomainSocketSupported();
+        return EpollServerDomainSocketChannel.class;
+    }
+
+    public static Class<? extends Channel> domainSocketChannelClass() {
+        checkDomainSocketSupported();
+        return EpollDomainSocketChannel.class;
+    }
+
+    /**
+     * epoll 下设置边缘触发/水平触发模式
+     * @param bootstrap bootstrap
+     */
+    public static void configureEpollMode(AbstractBootstrap<?, ?> bootstrap) {
+        if (useEpoll()) {
+            bootstrap.option(EpollChannelOption.EPOLL_MODE, epollMode());
+        }
+    }
+
+    public static EpollMode epollMode() {
+        return TransportConfig.isEdgeTriggered() ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED;
+    }
+
+    /**
+     * 是否是 Unix domain socket 地址
+     * @param uri provider url
+     * @return is unix domain socket
+     */
+    public static boolean isDomainSocket(URI uri) {
+        return UNIX_SCHEME.equals(uri.getScheme());
+    }
+
+    /**
+     * 将 Provider url 转换成连接地址
+     * http://host:port -> InetSocketAddress，unix:///path -> DomainSocketAddress
+     * @param uri provider url
+     * @return socket address
+     */
+    public static SocketAddress toSocketAddress(URI uri) {
+        if (isDomainSocket(uri)) {
+            return new DomainSocketAddress(uri.getPath());
+        }
+        return InetSocketAddress.createUnresolved(uri.getHost(), uri.getPort());
+    }
+
+    /**
+     * 将 Provider url 转换成解析好的连接地址，TCP 地址在这里完成域名解析，缓存下来后连接时不再解析
+     * @param uri provider url
+     * @return socket address
+     */
+    public static SocketAddress toResolvedSocketAddress(URI uri) {
+        if (isDomainSocket(uri)) {
+            return new DomainSocketAddress(uri.getPath());
+        }
+        return new InetSocketAddress(uri.getHost(), uri.getPort());
+    }
+
+    /**
+     * 连接池的key：Unix domain socket 按文件路径区分，TCP 按 host:port 区分
+     * @param uri provider url
+     * @return endpoint key
+     */
+    public static String endpointKey(URI uri) {
+        return isDomainSocket(uri) ? uri.getPath() : uri.getHost() + ":" + uri.getPort();
+    }
+
+    private static void checkDomainSocketSupported() {
+        if (!useEpoll()) {
+            throw new UnsupportedOperationException("Unix domain socket requires native epoll transport",
+                    Epoll.unavailabilityCause());
+        }
+    }
+}
@@ -20,41 +20,109 @@ package com.rpc.core.demo.netty.common;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.Attribute;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Rpc framework 自定义解码器
- * bytes -> rpcProtocol
+ * 帧头 + bytes -> rpcProtocol
+ * 帧头长度固定，没收全时只查看不读取，不在解码器中保存状态，帧被拆成多次到达时也能正确解码
+ * magic、版本、长度不合法时直接关闭连接；数据内容是接收缓冲区的 retained slice，不拷贝，
+ * 压缩过的数据内容解压到新的池化缓冲区中；同时记录对端声明的能解压的方式，编码器据此决定是否压缩
  *
  * @author lw1243925457
  */
 @Slf4j
 public class RpcDecoder extends ByteToMessageDecoder {
 
-    private int length = 0;
-
     @Override
     protected void decode(ChannelHandlerContext channelHandlerContext, ByteBuf in, List<Object> out) throws Exception {
-        log.info("Netty decode run");
-        if (in.readableBytes() >= 4) {
-            if (length == 0) {
-                length = in.readInt();
-            }
-            if (in.readableBytes() < length) {
-                log.info("Readable data is less, wait");
-                return;
-            }
-            byte[] content = new byte[length];
-            if (in.readableBytes() >= length) {
-                in.readBytes(content);
-                RpcProtocol rpcProtocol = new RpcProtocol();
-                rpcProtocol.setLen(length);
-                rpcProtocol.setContent(content);
-                out.add(rpcProtocol);
-            }
-            length = 0;
+        if (in.readableBytes() < FrameHeader.LENGTH) {
+            return;
+        }
+
+        int headerIndex = in.readerIndex();
+        short magic = in.getShort(headerIndex);
+        byte version = in.getByte(headerIndex + 2);
+        int length = in.getInt(headerIndex + FrameHeader.LENGTH_OFFSET);
+        if (magic != FrameHeader.MAGIC || version != FrameHeader.VERSION
+                || length < 0 || length > TransportConfig.getMaxFrameLength()) {
+            in.skipBytes(in.readableBytes());
+            channelHandlerContext.close();
+            throw new CorruptedFrameException("Illegal frame header, magic: " + magic + ", version: " + version
+                    + ", length: " + length);
+        }
+        byte flags = in.getByte(headerIndex + FrameHeader.FLAGS_OFFSET);
+        boolean hasMethodId = (flags & FrameHeader.FLAG_METHOD_ID) != 0;
+        boolean hasTimeout = (flags & FrameHeader.FLAG_TIMEOUT) != 0;
+        int extensionLength = (hasMethodId ? FrameHeader.METHOD_ID_LENGTH : 0)
+                + (hasTimeout ? FrameHeader.TIMEOUT_LENGTH : 0);
+        if (in.readableBytes() < FrameHeader.LENGTH + extensionLength + length) {
+            log.debug("Readable data is less, wait");
+            return;
+        }
+
+        MessageType type = MessageType.valueOf(in.getByte(headerIndex + 3));
+        if (type == null) {
+            in.skipBytes(in.readableBytes());
+            channelHandlerContext.close();
+            throw new CorruptedFrameException("Unknown message type: " + in.getByte(headerIndex + 3));
+        }
+
+        in.skipBytes(4);
+        byte serializer = in.readByte();
+        in.skipBytes(1);
+        byte status = in.readByte();
+        in.skipBytes(1);
+        long id = in.readLong();
+        in.skipBytes(4);
+        int methodId = hasMethodId ? in.readInt() : 0;
+        int timeoutMillis = hasTimeout ? in.readInt() : 0;
+
+        recordPeerAccepts(channelHandlerContext, flags);
+        RpcProtocol rpcProtocol = new RpcProtocol(readContent(channelHandlerContext, in, length, flags));
+        rpcProtocol.setVersion(version);
+        rpcProtocol.setType(type);
+        rpcProtocol.setSerializer(serializer);
+        rpcProtocol.setFlags(flags);
+        rpcProtocol.setStatus(status);
+        rpcProtocol.setId(id);
+        rpcProtocol.setMethodId(methodId);
+        if (hasTimeout) {
+            // 截止时间从收到请求时开始计算
+            rpcProtocol.setTimeoutMillis(timeoutMillis);
+            rpcProtocol.setDeadline(Deadline.after(timeoutMillis, TimeUnit.MILLISECONDS));
+        }
+        out.add(rpcProtocol);
+    }
+
+    private ByteBuf readContent(ChannelHandlerContext ctx, ByteBuf in, int length, byte flags) {
+        Compression compression = Compression.fromFlags(flags);
+        if (compression == Compression.NONE) {
+            return in.readRetainedSlice(length);
+        }
+
+        ByteBuf compressed = in.readSlice(length);
+        ByteBuf content = ctx.alloc().buffer(length * 2);
+        try {
+            compression.decompress(compressed, content, TransportConfig.getMaxFrameLength());
+            return content;
+        } catch (RuntimeException e) {
+            content.release();
+            throw e;
+        }
+    }
+
+    private void recordPeerAccepts(ChannelHandlerContext ctx, byte flags) {
+        int accepts = flags & Compression.ACCEPT_MASK;
+        Attribute<Integer> attribute = ctx.channel().attr(Compression.PEER_ACCEPTS);
+        Integer current = attribute.get();
+        if (current == null || current != accepts) {
+            attribute.set(accepts);
         }
     }
 }
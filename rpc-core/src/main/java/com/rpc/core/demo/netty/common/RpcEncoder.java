@@ -24,7 +24,10 @@ import lombok.extern.slf4j.Slf4j;
 
 /**
  * Rpc 自定义编码器
- * RpcProtocol -> bytes
+ * RpcProtocol -> 帧头 + bytes
+ * body 直接序列化到池化的 direct 发送缓冲区中，长度字段在写完后回填
+ * 数据内容超过阈值并且对端声明过能解压时，按配置的方式压缩，压缩后没有变小则保持原样
+ * 编码完成后 MessageToByteEncoder 会 release RpcProtocol
  *
  * @author lw1243925457
  */
@@ -33,8 +36,57 @@ public class RpcEncoder extends MessageToByteEncoder<RpcProtocol> {
 
     @Override
     protected void encode(ChannelHandlerContext channelHandlerContext, RpcProtocol msg, ByteBuf out) throws Exception {
-        log.info("Netty rpc encode run");
-        out.writeInt(msg.getLen());
-        out.writeBytes(msg.getContent());
+        int headerIndex = out.writerIndex();
+        out.writeShort(FrameHeader.MAGIC);
+        out.writeByte(msg.getVersion());
+        out.writeByte(msg.getType().getCode());
+        out.writeByte(msg.getSerializer());
+        // flags 在数据内容写完后回填
+        out.writeByte(0);
+        out.writeByte(msg.getStatus());
+        out.writeByte(0);
+        out.writeLong(msg.getId());
+        // 先占位长度字段，数据内容写完后再回填
+        out.writeInt(0);
+        if (msg.hasMethodId()) {
+            out.writeInt(msg.getMethodId());
+        }
+        if (msg.hasTimeout()) {
+            out.writeInt(msg.getTimeoutMillis());
+        }
+
+        int bodyIndex = out.writerIndex();
+        if (msg.getBody() != null) {
+            Serializers.get(msg.getSerializer()).serialize(msg.getBody(), out);
+        } else {
+            ByteBuf content = msg.content();
+            out.writeBytes(content, content.readerIndex(), content.readableBytes());
+        }
+
+        int bodyLength = out.writerIndex() - bodyIndex;
+        int flags = (msg.getFlags() & ~Compression.FLAG_MASK) | Compression.ACCEPT_MASK;
+        Compression compression = TransportConfig.getCompression();
+        if (compression != Compression.NONE && bodyLength >= TransportConfig.getCompressionThreshold()
+                && peerAccepts(channelHandlerContext, compression)) {
+            ByteBuf compressed = channelHandlerContext.alloc().buffer(bodyLength);
+            try {
+                compression.compress(out.slice(bodyIndex, bodyLength), compressed);
+                if (compressed.readableBytes() < bodyLength) {
+                    bodyLength = compressed.readableBytes();
+                    out.writerIndex(bodyIndex);
+                    out.writeBytes(compressed);
+                    flags |= compression.getCode();
+                }
+            } finally {
+                compressed.release();
+            }
+        }
+        out.setByte(headerIndex + FrameHeader.FLAGS_OFFSET, flags);
+        out.setInt(headerIndex + FrameHeader.LENGTH_OFFSET, bodyLength);
+    }
+
+    private boolean peerAccepts(ChannelHandlerContext ctx, Compression compression) {
+        Integer accepts = ctx.channel().attr(Compression.PEER_ACCEPTS).get();
+        return accepts != null && (accepts & compression.acceptFlag()) != 0;
     }
 }
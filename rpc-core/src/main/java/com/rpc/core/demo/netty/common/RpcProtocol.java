@@ -17,15 +17,68 @@
 
 package com.rpc.core.demo.netty.common;
 
-import lombok.Data;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+import io.netty.buffer.Unpooled;
+import lombok.Getter;
+import lombok.Setter;
 
 /**
- * Netty 通信的数据格式
+ * Netty 通信的数据格式：固定长度的帧头字段（见 FrameHeader）+ 数据内容
+ * 数据内容是引用计数的 ByteBuf：解码时是从池化的接收缓冲区中切出来的 retained slice，不做拷贝，
+ * 使用方读取完成后需要 release（SimpleChannelInboundHandler 会自动 release）
+ * 发送时只放入待序列化的对象 body，由编码器直接序列化到池化的发送缓冲区中，不产生中间的 String、byte[]
  *
  * @author lw1243925457
  */
-@Data
-public class RpcProtocol {
+@Getter
+@Setter
+public class RpcProtocol extends DefaultByteBufHolder {
+
+    /**
+     * 协议版本
+     */
+    private byte version = FrameHeader.VERSION;
+
+    /**
+     * 消息类型
+     */
+    private MessageType type = MessageType.REQUEST;
+
+    /**
+     * 序列化方式ID，见 Serializers
+     */
+    private byte serializer;
+
+    /**
+     * 标记位
+     */
+    private byte flags;
+
+    /**
+     * 响应状态，见 FrameHeader，非正常状态的响应可以没有数据内容
+     */
+    private byte status = FrameHeader.STATUS_OK;
+
+    /**
+     * 请求ID：客户端生成，服务端原样返回，用于在同一个连接上匹配请求和响应
+     */
+    private long id;
+
+    /**
+     * 方法ID，flags 中带 FLAG_METHOD_ID 时有效
+     */
+    private int methodId;
+
+    /**
+     * 请求剩余的超时时间（毫秒），flags 中带 FLAG_TIMEOUT 时有效
+     */
+    private int timeoutMillis;
+
+    /**
+     * 收到请求时按剩余超时时间计算的截止时间，不参与编码，没有超时时间时为 null
+     */
+    private Deadline deadline;
 
     /**
      * 数据大小
@@ -33,7 +86,85 @@ public class RpcProtocol {
     private int len;
 
     /**
-     * 数据内容
+     * 待发送的对象（RpcRequest、RpcResponse），编码时才序列化
+     */
+    private Object body;
+
+    /**
+     * @param content 数据内容
+     */
+    public RpcProtocol(ByteBuf content) {
+        super(content);
+        this.len = content.readableBytes();
+    }
+
+    /**
+     * 生成待发送的消息，body 在编码器中直接序列化到发送缓冲区
+     * @param type 消息类型
+     * @param body RpcRequest or RpcResponse
+     * @param serializer 序列化方式ID
+     * @return RpcProtocol
+     */
+    public static RpcProtocol withBody(MessageType type, Object body, byte serializer) {
+        RpcProtocol message = new RpcProtocol(Unpooled.EMPTY_BUFFER);
+        message.setType(type);
+        message.setBody(body);
+        message.setSerializer(serializer);
+        return message;
+    }
+
+    /**
+     * 生成带方法ID的请求，数据内容只有参数数组
+     * @param type REQUEST or ONEWAY
+     * @param methodId 握手时服务端下发的方法ID
+     * @param args 参数数组
+     * @param serializer 序列化方式ID
+     * @return RpcProtocol
+     */
+    public static RpcProtocol withMethodId(MessageType type, int methodId, Object[] args, byte serializer) {
+        RpcProtocol message = withBody(type, args == null ? new Object[0] : args, serializer);
+        message.setMethodId(methodId);
+        message.setFlags((byte) (message.getFlags() | FrameHeader.FLAG_METHOD_ID));
+        return message;
+    }
+
+    /**
+     * 是否带方法ID
+     * @return boolean
+     */
+    public boolean hasMethodId() {
+        return (flags & FrameHeader.FLAG_METHOD_ID) != 0;
+    }
+
+    /**
+     * 设置请求剩余的超时时间，同时设置标记位
+     * @param timeoutMillis remaining timeout millis
+     */
+    public void setTimeoutMillis(int timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        this.flags = (byte) (flags | FrameHeader.FLAG_TIMEOUT);
+    }
+
+    /**
+     * 是否带剩余超时时间
+     * @return boolean
+     */
+    public boolean hasTimeout() {
+        return (flags & FrameHeader.FLAG_TIMEOUT) != 0;
+    }
+
+    /**
+     * 生成只有帧头、没有数据内容的消息，例如心跳、服务端繁忙的拒绝响应
+     * @param type 消息类型
+     * @param id request id
+     * @param status 状态
+     * @return RpcProtocol
      */
-    private byte[] content;
+    public static RpcProtocol headerOnly(MessageType type, long id, byte status) {
+        RpcProtocol message = new RpcProtocol(Unpooled.EMPTY_BUFFER);
+        message.setType(type);
+        message.setId(id);
+        message.setStatus(status);
+        return message;
+    }
 }
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.netty.common;
+
+import io.netty.buffer.ByteBuf;
+
+import java.lang.reflect.Type;
+
+/**
+ * 序列化 SPI：RpcProtocol 数据内容的序列化方式
+ * 每个实现有唯一的ID，写在帧中，接收方据此选择反序列化方式，服务端使用和请求相同的方式返回响应
+ * 实现需要是线程安全的
+ *
+ * @author lw1243925457
+ */
+public interface Serializer {
+
+    /**
+     * 序列化方式ID，写在帧中
+     * @return id
+     */
+    byte getId();
+
+    /**
+     * 序列化方式名称，用于配置
+     * @return name
+     */
+    String getName();
+
+    /**
+     * 将对象直接序列化写入 ByteBuf
+     * @param object object
+     * @param out output buffer
+     */
+    void serialize(Object object, ByteBuf out);
+
+    /**
+     * 从 ByteBuf 中反序列化对象，不 release ByteBuf
+     * @param in data
+     * @param type object type
+     * @return object
+     */
+    <T> T deserialize(ByteBuf in, Type type);
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.netty.common;
+
+import com.rpc.core.demo.exception.RpcException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 序列化方式的注册和选择
+ * 客户端默认使用 json，可以全局修改，也可以按服务单独指定
+ * 接收时只接受 json 和本端配置过（默认方式或者某个服务的方式）的序列化方式，其他方式即使已经注册也拒绝
+ *
+ * @author lw1243925457
+ */
+public class Serializers {
+
+    private static final Serializer[] SERIALIZERS = new Serializer[128];
+    private static final Map<String, Serializer> NAMED_SERIALIZERS = new ConcurrentHashMap<>();
+
+    /**
+     * 服务名 -> 序列化方式
+     */
+    private static final Map<String, Serializer> SERVICE_SERIALIZERS = new ConcurrentHashMap<>();
+
+    private static volatile Serializer defaultSerializer;
+
+    static {
+        register(new JsonSerializer());
+        register(new BinarySerializer());
+        defaultSerializer = get(JsonSerializer.NAME);
+    }
+
+    private Serializers() {
+    }
+
+    /**
+     * 注册自定义序列化方式
+     * @param serializer serializer
+     */
+    public static synchronized void register(Serializer serializer) {
+        SERIALIZERS[serializer.getId()] = serializer;
+        NAMED_SERIALIZERS.put(serializer.getName(), serializer);
+    }
+
+    /**
+     * 根据帧中的ID获取序列化方式
+     * @param id serializer id
+     * @return serializer
+     */
+    public static Serializer get(byte id) {
+        Serializer serializer = find(id);
+        if (serializer == null) {
+            throw new RpcException("Unknown serializer id: " + id);
+        }
+        return serializer;
+    }
+
+    /**
+     * @param id serializer id
+     * @return serializer，未注册时返回 null
+     */
+    public static Serializer find(byte id) {
+        return id >= 0 ? SERIALIZERS[id] : null;
+    }
+
+    public static Serializer get(String name) {
+        Serializer serializer = NAMED_SERIALIZERS.get(name);
+        if (serializer == null) {
+            throw new RpcException("Unknown serializer: " + name);
+        }
+        return serializer;
+    }
+
+    public static void setDefaultSerializer(String name) {
+        defaultSerializer = get(name);
+    }
+
+    public static Serializer getDefaultSerializer() {
+        return defaultSerializer;
+    }
+
+    /**
+     * 指定某个服务使用的序列化方式
+     * @param service service name
+     * @param name serializer name
+     */
+    public static void setServiceSerializer(String service, String name) {
+        SERVICE_SERIALIZERS.put(service, get(name));
+    }
+
+    /**
+     * 本端是否接受这种序列化方式的数据：json，默认方式，或者被某个服务指定的方式
+     * 服务端在知道请求的服务之前（如按完整请求查找方法）据此检查
+     * @param id serializer id
+     * @return accepted
+     */
+    public static boolean isAccepted(byte id) {
+        if (id == JsonSerializer.ID || id == defaultSerializer.getId()) {
+            return true;
+        }
+        for (Serializer serializer: SERVICE_SERIALIZERS.values()) {
+            if (serializer.getId() == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 某个服务是否接受这种序列化方式的数据：json，或者这个服务使用的序列化方式
+     * @param service service name
+     * @param id serializer id
+     * @return accepted
+     */
+    public static boolean isAccepted(String service, byte id) {
+        return id == JsonSerializer.ID || forService(service).getId() == id;
+    }
+
+    /**
+     * 客户端调用某个服务时使用的序列化方式，没有单独指定时使用默认方式
+     * @param service service name
+     * @return serializer
+     */
+    public static Serializer forService(String service) {
+        return SERVICE_SERIALIZERS.getOrDefault(service, defaultSerializer);
+    }
+}
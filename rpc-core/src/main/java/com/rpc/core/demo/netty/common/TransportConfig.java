@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.netty.common;
+
+import io.netty.handler.flush.FlushConsolidationHandler;
+
+/**
+ * 客户端和服务端 pipeline 共用的传输配置
+ *
+ * @author lw1243925457
+ */
+public class TransportConfig {
+
+    /**
+     * 是否优先使用 native 传输（Linux epoll），不可用时自动退回 NIO
+     */
+    private static boolean nativeTransport = true;
+
+    /**
+     * epoll 是否使用边缘触发模式，false 时使用水平触发
+     */
+    private static boolean edgeTriggered = true;
+
+    /**
+     * 是否合并flush：同一个 event loop 周期内的多次 writeAndFlush 合并成一次系统调用
+     */
+    private static boolean flushConsolidation = true;
+
+    /**
+     * 最多合并多少次flush后强制flush一次，避免一直攒着不发
+     */
+    private static int explicitFlushAfterFlushes = FlushConsolidationHandler.DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES;
+
+    /**
+     * 单个帧数据内容的最大长度，帧头中的长度超过时直接关闭连接
+     */
+    private static int maxFrameLength = 16 * 1024 * 1024;
+
+    /**
+     * 数据内容的压缩方式，默认不压缩；带宽受限的链路上可以打开
+     */
+    private static Compression compression = Compression.NONE;
+
+    /**
+     * 数据内容超过这个大小才压缩，小请求没有额外开销
+     */
+    private static int compressionThreshold = 2048;
+
+    public static boolean isNativeTransport() {
+        return nativeTransport;
+    }
+
+    public static void setNativeTransport(boolean nativeTransport) {
+        TransportConfig.nativeTransport = nativeTransport;
+    }
+
+    public static boolean isEdgeTriggered() {
+        return edgeTriggered;
+    }
+
+    public static void setEdgeTriggered(boolean edgeTriggered) {
+        TransportConfig.edgeTriggered = edgeTriggered;
+    }
+
+    public static boolean isFlushConsolidation() {
+        return flushConsolidation;
+    }
+
+    public static void setFlushConsolidation(boolean flushConsolidation) {
+        TransportConfig.flushConsolidation = flushConsolidation;
+    }
+
+    public static int getExplicitFlushAfterFlushes() {
+        return explicitFlushAfterFlushes;
+    }
+
+    public static void setExplicitFlushAfterFlushes(int explicitFlushAfterFlushes) {
+        TransportConfig.explicitFlushAfterFlushes = explicitFlushAfterFlushes;
+    }
+
+    public static int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    public static void setMaxFrameLength(int maxFrameLength) {
+        TransportConfig.maxFrameLength = maxFrameLength;
+    }
+
+    public static Compression getCompression() {
+        return compression;
+    }
+
+    public static void setCompression(Compression compression) {
+        TransportConfig.compression = compression;
+    }
+
+    public static int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public static void setCompressionThreshold(int compressionThreshold) {
+        TransportConfig.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * 生成flush合并处理器，放在 pipeline 最前面
+     * 请求和响应大多不在 read 过程中写出（业务线程、调用方线程），所以不在 read 中时也进行合并，
+     * 由 event loop 在本轮任务结束时统一flush
+     * @return flush consolidation handler
+     */
+    public static FlushConsolidationHandler newFlushConsolidationHandler() {
+        return new FlushConsolidationHandler(explicitFlushAfterFlushes, true);
+    }
+}
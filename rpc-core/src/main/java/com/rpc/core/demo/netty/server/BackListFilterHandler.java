@@ -17,38 +17,45 @@
 
 package com.rpc.core.demo.netty.server;
 
-import com.alibaba.fastjson.JSON;
-import com.rpc.core.demo.api.RpcResponse;
 import com.rpc.core.demo.filter.server.BackListFilter;
+import com.rpc.core.demo.netty.common.FrameHeader;
+import com.rpc.core.demo.netty.common.MessageType;
 import com.rpc.core.demo.netty.common.RpcProtocol;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
-import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
 
 import java.net.InetSocketAddress;
 
 /**
+ * 放在解码器之后，黑名单中的请求只根据帧头直接返回禁止访问状态的响应（带上请求ID，客户端才能匹配），不解析数据内容，不再继续处理
+ *
  * @author lw1243925457
  */
 public class BackListFilterHandler extends ChannelInboundHandlerAdapter {
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        // Unix domain socket 连接来自本机，不做IP黑名单检查
+        if (!(ctx.channel().remoteAddress() instanceof InetSocketAddress)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
         InetSocketAddress socket = (InetSocketAddress) ctx.channel().remoteAddress();
         String clientIp = socket.getAddress().getHostAddress();
         System.out.println(clientIp);
 
         if (BackListFilter.checkAddress(clientIp)) {
-            RpcResponse response = new RpcResponse();
-            response.setStatus(false);
-            response.setException(new Exception("back list"));
-
-            RpcProtocol message = new RpcProtocol();
-            String requestJson = JSON.toJSONString(response);
-            message.setLen(requestJson.getBytes(CharsetUtil.UTF_8).length);
-            message.setContent(requestJson.getBytes(CharsetUtil.UTF_8));
-
-            ctx.channel().writeAndFlush(message).sync();
+            RpcProtocol request = (RpcProtocol) msg;
+            long id = request.getId();
+            boolean needResponse = request.getType() == MessageType.REQUEST;
+            ReferenceCountUtil.release(msg);
+
+            if (needResponse) {
+                ctx.writeAndFlush(RpcProtocol.headerOnly(MessageType.RESPONSE, id, FrameHeader.STATUS_FORBIDDEN));
+            }
+            return;
         }
 
         ctx.fireChannelRead(msg);
@@ -17,19 +17,21 @@
 
 package com.rpc.core.demo.netty.server;
 
-import com.rpc.core.demo.netty.common.RpcDecoder;
-import com.rpc.core.demo.netty.common.RpcEncoder;
+import com.rpc.core.demo.netty.common.NettyTransport;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
-import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.unix.DomainSocketAddress;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Netty Server 启动类
+ * Linux 上优先使用 native epoll，可以开启 SO_REUSEPORT 绑定多个 acceptor，也可以同时监听 Unix domain socket
  *
  * @author lw1243925457
  */
@@ -40,35 +42,117 @@ public class RpcNettyServer {
     private EventLoopGroup worker;
     private int port;
 
+    /**
+     * SO_REUSEPORT 下绑定的 acceptor 数量，每个 acceptor 一个监听 socket，由内核分发新连接
+     * 只在 native epoll 下生效
+     */
+    private int acceptors = 1;
+
+    /**
+     * Unix domain socket 监听路径，为空时不监听
+     */
+    private String domainSocketPath;
+
+    /**
+     * 业务线程池：线程数、队列长度、队列满时的拒绝策略
+     */
+    private int businessThreads = Runtime.getRuntime().availableProcessors() * 2;
+    private int businessQueueSize = 1024;
+    private ServerDispatcher.RejectPolicy rejectPolicy = ServerDispatcher.RejectPolicy.ABORT;
+    private ServerDispatcher dispatcher;
+
+    private final List<Channel> serverChannels = new ArrayList<>();
+
     public RpcNettyServer(int port) {
         this.port = port;
     }
 
+    public void setAcceptors(int acceptors) {
+        this.acceptors = acceptors;
+    }
+
+    public void setDomainSocketPath(String domainSocketPath) {
+        this.domainSocketPath = domainSocketPath;
+    }
+
+    public void setBusinessThreads(int businessThreads) {
+        this.businessThreads = businessThreads;
+    }
+
+    public void setBusinessQueueSize(int businessQueueSize) {
+        this.businessQueueSize = businessQueueSize;
+    }
+
+    public void setRejectPolicy(ServerDispatcher.RejectPolicy rejectPolicy) {
+        this.rejectPolicy = rejectPolicy;
+    }
+
+    /**
+     * 业务线程池，可以获取排队数、拒绝数等指标
+     * @return dispatcher
+     */
+    public ServerDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
     public void destroy() {
+        for (Channel channel: serverChannels) {
+            channel.close();
+        }
         worker.shutdownGracefully();
         boss.shutdownGracefully();
+        dispatcher.shutdown();
     }
 
     public void run() throws Exception {
-        boss = new NioEventLoopGroup(1);
-        worker = new NioEventLoopGroup();
+        dispatcher = new ServerDispatcher(businessThreads, businessQueueSize, rejectPolicy);
+        boolean reusePort = NettyTransport.useEpoll() && acceptors > 1;
+        boss = NettyTransport.newEventLoopGroup(reusePort ? acceptors : 1);
+        worker = NettyTransport.newEventLoopGroup(0);
+        log.info("Netty server transport: " + (NettyTransport.useEpoll() ? "epoll" : "nio"));
 
         ServerBootstrap serverBootstrap = new ServerBootstrap();
         serverBootstrap.group(boss, worker)
-                .channel(NioServerSocketChannel.class)
-                .childHandler(new ChannelInitializer() {
-                    @Override
-                    protected void initChannel(Channel channel) throws Exception {
-                        ChannelPipeline pipeline = channel.pipeline();
-                        pipeline.addLast("Back List", new BackListFilterHandler());
-                        pipeline.addLast("Message Encoder", new RpcEncoder());
-                        pipeline.addLast("Message Decoder", new RpcDecoder());
-                        pipeline.addLast("Message Handler", new RpcServerHandler());
-                    }
-                });
-
-        Channel channel = serverBootstrap.bind(port).sync().channel();
-        log.info("Netty server listen in port: " + port);
-        channel.closeFuture().sync();
+                .channel(NettyTransport.serverChannelClass())
+                .childHandler(new RpcServerInitializer(dispatcher));
+        NettyTransport.configureEpollMode(serverBootstrap);
+        if (NettyTransport.useEpoll()) {
+            serverBootstrap.childOption(EpollChannelOption.EPOLL_MODE, NettyTransport.epollMode());
+        }
+        if (reusePort) {
+            serverBootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+
+        int bindTimes = reusePort ? acceptors : 1;
+        for (int i = 0; i < bindTimes; i++) {
+            serverChannels.add(serverBootstrap.bind(port).sync().channel());
+        }
+        log.info("Netty server listen in port: " + port + ", acceptors: " + bindTimes);
+
+        if (domainSocketPath != null) {
+            serverChannels.add(bindDomainSocket());
+            log.info("Netty server listen in unix domain socket: " + domainSocketPath);
+        }
+
+        for (Channel channel: serverChannels) {
+            channel.closeFuture().sync();
+        }
+    }
+
+    /**
+     * 监听 Unix domain socket，给同一台机器上的 sidecar 客户端使用
+     * @return server channel
+     * @throws InterruptedException exception
+     */
+    private Channel bindDomainSocket() throws InterruptedException {
+        // 上次异常退出时遗留的 socket 文件会导致 bind 失败
+        new File(domainSocketPath).delete();
+
+        ServerBootstrap domainBootstrap = new ServerBootstrap();
+        domainBootstrap.group(boss, worker)
+                .channel(NettyTransport.serverDomainSocketChannelClass())
+                .childHandler(new RpcServerInitializer(dispatcher));
+        NettyTransport.configureEpollMode(domainBootstrap);
+        return domainBootstrap.bind(new DomainSocketAddress(domainSocketPath)).sync().channel();
     }
 }
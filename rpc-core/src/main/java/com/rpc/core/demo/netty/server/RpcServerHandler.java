@@ -17,81 +17,268 @@
 
 package com.rpc.core.demo.netty.server;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.serializer.SerializerFeature;
 import com.rpc.core.demo.api.RpcRequest;
 import com.rpc.core.demo.api.RpcResponse;
-import com.rpc.core.demo.exception.CustomException;
+import com.rpc.core.demo.exception.RpcException;
+import com.rpc.core.demo.filter.server.GradientLimiter;
+import com.rpc.core.demo.netty.common.Deadline;
+import com.rpc.core.demo.netty.common.FrameHeader;
+import com.rpc.core.demo.netty.common.MessageType;
 import com.rpc.core.demo.netty.common.RpcProtocol;
+import com.rpc.core.demo.netty.common.Serializer;
+import com.rpc.core.demo.netty.common.Serializers;
+import com.rpc.core.demo.proxy.ProviderInvoker;
 import com.rpc.core.demo.proxy.ProviderServiceManagement;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.util.CharsetUtil;
 import lombok.extern.slf4j.Slf4j;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.Arrays;
-
 /**
+ * IO 线程中只做请求的反序列化，Provider 调用和响应序列化按服务的执行方式交给业务线程池或者单独的线程执行
+ * 带超时时间的请求在反序列化前和执行前各检查一次，已经超时的直接丢弃
+ * 配置了并发限制的服务，超过限制的请求直接返回过载状态；带方法ID的请求在反序列化参数之前检查
+ *
  * @author lw1243925457
  */
 @Slf4j
 public class RpcServerHandler extends SimpleChannelInboundHandler<RpcProtocol> {
 
+    private final ServerDispatcher dispatcher;
+
+    public RpcServerHandler(ServerDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
     @Override
     protected void channelRead0(ChannelHandlerContext channelHandlerContext, RpcProtocol msg) throws Exception {
         log.info("Netty server receive message:");
-        log.info("Message length: " + msg.getLen());
-        log.info("Message content: " + new String(msg.getContent(), CharsetUtil.UTF_8));
+        log.info("Message id: " + msg.getId() + ", length: " + msg.getLen());
 
-        // 获取 RpcProtocol中的 RpcRequest内容，反序列化成 RpcRequest 对象
-        String json = new String(msg.getContent(), CharsetUtil.UTF_8);
-        RpcRequest rpcRequest = JSON.parseObject(json, RpcRequest.class);
-        log.info("Netty server serializer : " + rpcRequest.toString());
+        long id = msg.getId();
+        // 心跳、不支持的序列化方式只看帧头就能处理，不需要解析数据内容
+        if (msg.getType() == MessageType.HEARTBEAT) {
+            channelHandlerContext.writeAndFlush(RpcProtocol.headerOnly(MessageType.HEARTBEAT, id, FrameHeader.STATUS_OK));
+            return;
+        }
+        if (msg.getType() != MessageType.REQUEST && msg.getType() != MessageType.ONEWAY
+                && msg.getType() != MessageType.HANDSHAKE) {
+            log.info("Ignore unexpected message type: " + msg.getType());
+            return;
+        }
+        boolean oneway = msg.getType() == MessageType.ONEWAY;
+        // 客户端已经超时的请求不再处理，调用方已经放弃了结果
+        Deadline deadline = msg.getDeadline();
+        if (deadline != null && deadline.isExpired()) {
+            log.info("Drop expired request, id: " + id);
+            return;
+        }
+        // 只接受 json 和本端配置过的序列化方式，对端不能随意选择其他已注册的方式
+        Serializer serializer = Serializers.find(msg.getSerializer());
+        if (serializer == null || !Serializers.isAccepted(serializer.getId())) {
+            if (!oneway) {
+                writeStatus(channelHandlerContext, id, FrameHeader.STATUS_BAD_REQUEST);
+            }
+            return;
+        }
+
+        // 握手：返回服务方法目录，之后客户端在这个连接上只发送方法ID和参数
+        if (msg.getType() == MessageType.HANDSHAKE) {
+            RpcProtocol catalogue = RpcProtocol.withBody(MessageType.HANDSHAKE,
+                    ProviderServiceManagement.getCatalogue(), serializer.getId());
+            catalogue.setId(id);
+            channelHandlerContext.writeAndFlush(catalogue);
+            return;
+        }
 
-        // 获取相应的bean，反射调用方法，获取结果
-        RpcResponse response = invoke(rpcRequest);
+        // 初始化时生成的方法调用器，一次查表：带方法ID时按ID直接取，数据内容只有参数数组
+        // 否则按帧中的序列化方式直接从 ByteBuf 反序列化成 RpcRequest 对象，再按方法key查找
+        // 响应使用和请求相同的序列化方式；方法返回后 SimpleChannelInboundHandler 会 release 数据内容
+        ProviderInvoker invoker;
+        Object[] args;
+        if (msg.hasMethodId()) {
+            invoker = ProviderServiceManagement.getInvoker(msg.getMethodId());
+            if (invoker == null) {
+                if (!oneway) {
+                    writeStatus(channelHandlerContext, id, FrameHeader.STATUS_BAD_REQUEST);
+                }
+                return;
+            }
+            if (!acceptsSerializer(channelHandlerContext, id, invoker, serializer, oneway)
+                    || !acquire(channelHandlerContext, id, invoker, oneway)) {
+                return;
+            }
+            try {
+                args = serializer.deserialize(msg.content(), Object[].class);
+            } catch (RuntimeException e) {
+                release(invoker);
+                rejectMalformed(channelHandlerContext, id, e, oneway);
+                return;
+            }
+        } else {
+            RpcRequest rpcRequest;
+            try {
+                rpcRequest = serializer.deserialize(msg.content(), RpcRequest.class);
+            } catch (RuntimeException e) {
+                rejectMalformed(channelHandlerContext, id, e, oneway);
+                return;
+            }
+            log.info("Netty server serializer : " + rpcRequest.toString());
+            invoker = ProviderServiceManagement.getInvoker(rpcRequest);
+            if (invoker == null) {
+                if (!oneway) {
+                    writeResponse(channelHandlerContext, id, serializer, errorResponse(new RpcException(
+                            "Can't find provider method: " + rpcRequest.getServiceClass() + "#" + rpcRequest.getMethod())));
+                }
+                return;
+            }
+            if (!acceptsSerializer(channelHandlerContext, id, invoker, serializer, oneway)
+                    || !acquire(channelHandlerContext, id, invoker, oneway)) {
+                return;
+            }
+            args = rpcRequest.getArgv();
+        }
 
-        // 返回结果给netty 客户端
-        RpcProtocol message = new RpcProtocol();
-        String requestJson = JSON.toJSONString(response);
-        message.setLen(requestJson.getBytes(CharsetUtil.UTF_8).length);
-        message.setContent(requestJson.getBytes(CharsetUtil.UTF_8));
+        long start = System.nanoTime();
+        boolean accepted = dispatcher.dispatch(() -> {
+            // 在线程池中排队期间超时的请求直接丢弃
+            if (deadline != null && deadline.isExpired()) {
+                log.info("Drop expired request, id: " + id);
+                release(invoker);
+                return;
+            }
+            // 通过调用器直接调用实现类的方法，获取结果，Provider 中发起的调用继承剩余的超时时间
+            RpcResponse<Object> response;
+            try {
+                response = Deadline.call(deadline, () -> invoke(invoker, args));
+            } finally {
+                // 延迟包含线程池中的排队时间，排队变长时并发限制随之缩小
+                if (invoker.getLimiter() != null) {
+                    invoker.getLimiter().onComplete(System.nanoTime() - start);
+                }
+            }
+            // 单向请求只执行，不返回响应
+            if (!oneway) {
+                writeResponse(channelHandlerContext, id, serializer, response);
+            }
+        }, invoker.getDispatchMode());
 
-        channelHandlerContext.writeAndFlush(message).sync();
+        if (!accepted) {
+            release(invoker);
+            if (!oneway) {
+                writeStatus(channelHandlerContext, id, FrameHeader.STATUS_BUSY);
+            }
+        }
+    }
+
+    /**
+     * 数据内容无法解析（格式错误、类型不符、不允许的类）时返回请求无法处理，连接继续使用
+     */
+    private void rejectMalformed(ChannelHandlerContext ctx, long id, RuntimeException cause, boolean oneway) {
+        log.info("Reject malformed request, id: " + id + ", " + cause);
+        if (!oneway) {
+            writeStatus(ctx, id, FrameHeader.STATUS_BAD_REQUEST);
+        }
+    }
+
+    /**
+     * 服务没有选择的序列化方式（json 除外）返回请求无法处理
+     * @return false：请求被拒绝，不再继续处理
+     */
+    private boolean acceptsSerializer(ChannelHandlerContext ctx, long id, ProviderInvoker invoker, Serializer serializer,
+                                      boolean oneway) {
+        if (Serializers.isAccepted(invoker.getService(), serializer.getId())) {
+            return true;
+        }
+        log.info("Reject request with serializer " + serializer.getName() + " for service " + invoker.getService());
+        if (!oneway) {
+            writeStatus(ctx, id, FrameHeader.STATUS_BAD_REQUEST);
+        }
+        return false;
+    }
+
+    /**
+     * 获取服务的并发许可，超过限制时返回过载状态的响应，只有帧头，不需要序列化
+     * @return false：请求被拒绝，不再继续处理
+     */
+    private boolean acquire(ChannelHandlerContext ctx, long id, ProviderInvoker invoker, boolean oneway) {
+        GradientLimiter limiter = invoker.getLimiter();
+        if (limiter == null || limiter.tryAcquire()) {
+            return true;
+        }
+        log.info("Shed request, id: " + id + ", " + limiter);
+        if (!oneway) {
+            writeStatus(ctx, id, FrameHeader.STATUS_OVERLOADED);
+        }
+        return false;
+    }
+
+    private void release(ProviderInvoker invoker) {
+        if (invoker.getLimiter() != null) {
+            invoker.getLimiter().release();
+        }
+    }
+
+    /**
+     * 返回只有帧头的非正常状态响应，不需要序列化
+     * @param ctx channel context
+     * @param id request id
+     * @param status status
+     */
+    private void writeStatus(ChannelHandlerContext ctx, long id, byte status) {
+        ctx.writeAndFlush(RpcProtocol.headerOnly(MessageType.RESPONSE, id, status));
+    }
+
+    /**
+     * 返回结果给netty 客户端
+     * @param ctx channel context
+     * @param id request id
+     * @param serializer 请求使用的序列化方式
+     * @param response response
+     */
+    private void writeResponse(ChannelHandlerContext ctx, long id, Serializer serializer, RpcResponse<Object> response) {
+        RpcProtocol message = RpcProtocol.withBody(MessageType.RESPONSE, response, serializer.getId());
+        message.setId(id);
+
+        // 不阻塞等待写完成，flush 由 pipeline 前面的合并处理器统一进行
+        ctx.writeAndFlush(message).addListener(future -> {
+            if (!future.isSuccess()) {
+                log.info("return response to client failed", future.cause());
+            }
+        });
         log.info("return response to client end");
     }
 
+    private RpcResponse<Object> errorResponse(Exception e) {
+        RpcResponse<Object> response = new RpcResponse<>();
+        response.setException(e);
+        response.setStatus(false);
+        return response;
+    }
+
     /**
-     * 获取接口实现对应的bean，反射调用方法，返回结果
-     * @param request rpc request
+     * 调用接口实现类的方法，返回结果，方法抛出的异常放入响应中返回给客户端
+     * @param invoker provider method invoker
+     * @param args 请求参数
      * @return result
      */
-    private RpcResponse invoke(RpcRequest request) {
-        RpcResponse response = new RpcResponse();
-
-        log.info("service provider name: " + request.getServiceClass());
-        Object service = ProviderServiceManagement.getProviderService(request);
+    private RpcResponse<Object> invoke(ProviderInvoker invoker, Object[] args) {
+        RpcResponse<Object> response = new RpcResponse<>();
 
+        log.info("service provider method: " + invoker.getSignature());
         try {
-            Method method = resolveMethodFromClass(service.getClass(), request.getMethod());
-            Object result = method.invoke(service, request.getArgv());
-            log.info("Server method invoke result: " + result.toString());
-            // 两次json序列化能否合并成一个
-            response.setResult(JSON.toJSONString(result, SerializerFeature.WriteClassName));
+            Object result = invoker.invoke(args);
+            log.info("Server method invoke result: " + result);
+            // 结果对象直接放入响应，和响应一起只序列化一次
+            response.setResult(result);
             response.setStatus(true);
             log.info("Server Response serialize to string return");
             return response;
-        } catch (IllegalAccessException | InvocationTargetException | CustomException e) {
+        } catch (Exception e) {
             e.printStackTrace();
-            response.setException(e);
-            response.setStatus(false);
-            return response;
+            return errorResponse(e);
+        } catch (Throwable e) {
+            e.printStackTrace();
+            return errorResponse(new RpcException("Provider invoke failed: " + e, e));
         }
     }
-
-    private Method resolveMethodFromClass(Class<?> klass, String methodName) {
-        return Arrays.stream(klass.getMethods()).filter(m -> methodName.equals(m.getName())).findFirst().get();
-    }
 }
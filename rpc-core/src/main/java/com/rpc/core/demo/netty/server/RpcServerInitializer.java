@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.netty.server;
+
+import com.rpc.core.demo.netty.common.RpcDecoder;
+import com.rpc.core.demo.netty.common.RpcEncoder;
+import com.rpc.core.demo.netty.common.TransportConfig;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+
+/**
+ * 服务端连接的 pipeline 初始化，TCP 和 Unix domain socket 连接共用
+ *
+ * @author lw1243925457
+ */
+public class RpcServerInitializer extends ChannelInitializer<Channel> {
+
+    private final ServerDispatcher dispatcher;
+
+    public RpcServerInitializer(ServerDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    protected void initChannel(Channel channel) {
+        ChannelPipeline pipeline = channel.pipeline();
+        if (TransportConfig.isFlushConsolidation()) {
+            pipeline.addLast("Flush Consolidation", TransportConfig.newFlushConsolidationHandler());
+        }
+        pipeline.addLast("Message Encoder", new RpcEncoder());
+        pipeline.addLast("Message Decoder", new RpcDecoder());
+        pipeline.addLast("Back List", new BackListFilterHandler());
+        pipeline.addLast("Message Handler", new RpcServerHandler(dispatcher));
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.netty.server;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.rpc.core.demo.annotation.DispatchMode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 服务端业务线程池
+ * IO 线程只负责编解码，反射调用 Provider 和序列化结果都放到这里执行，避免慢请求阻塞整个 event loop
+ * 线程数和队列长度都是有界的，队列满时按拒绝策略处理
+ * 标记为 THREAD_PER_REQUEST 的服务不进线程池，每个请求一个线程（JDK 21+ 为虚拟线程）
+ *
+ * @author lw1243925457
+ */
+@Slf4j
+public class ServerDispatcher {
+
+    /**
+     * 队列满时的拒绝策略
+     */
+    public enum RejectPolicy {
+        /**
+         * 直接给客户端返回服务繁忙的错误响应
+         */
+        ABORT,
+        /**
+         * 在 IO 线程中直接执行，相当于反压，会拖慢同一个 event loop 上的其他连接
+         */
+        CALLER_RUNS
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final ExecutorService threadPerRequestExecutor = newThreadPerRequestExecutor();
+    private final RejectPolicy rejectPolicy;
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public ServerDispatcher(int threads, int queueSize, RejectPolicy rejectPolicy) {
+        this.rejectPolicy = rejectPolicy;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                new ThreadFactoryBuilder().setNameFormat("server business-%d").build(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 按服务的执行方式提交业务任务
+     * @param task task
+     * @param mode dispatch mode
+     * @return 是否被接受，false 表示被拒绝，调用方需要返回繁忙响应
+     */
+    public boolean dispatch(Runnable task, DispatchMode mode) {
+        if (mode == DispatchMode.THREAD_PER_REQUEST) {
+            threadPerRequestExecutor.execute(task);
+            return true;
+        }
+        return dispatch(task);
+    }
+
+    /**
+     * 提交业务任务到业务线程池
+     * @param task task
+     * @return 是否被接受，false 表示被拒绝，调用方需要返回繁忙响应
+     */
+    public boolean dispatch(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            long rejected = rejectedCount.incrementAndGet();
+            log.info("Server business pool is full, queue size: " + getQueueSize() + ", rejected: " + rejected);
+            if (rejectPolicy == RejectPolicy.CALLER_RUNS) {
+                task.run();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 当前排队中的任务数
+     * @return queue depth
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * 正在执行任务的线程数
+     * @return active count
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * 累计被拒绝的任务数
+     * @return rejected count
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * 累计执行完成的任务数
+     * @return completed count
+     */
+    public long getCompletedTaskCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        threadPerRequestExecutor.shutdown();
+    }
+
+    /**
+     * JDK 21 及以上使用虚拟线程（通过反射调用，保持 Java 8 编译），否则退回到缓存线程池
+     * @return thread per request executor
+     */
+    private static ExecutorService newThreadPerRequestExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            log.info("Server thread per request mode use virtual thread");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.info("Virtual thread not supported, thread per request mode use cached thread pool");
+            return Executors.newCachedThreadPool(
+                    new ThreadFactoryBuilder().setNameFormat("server request-%d").setDaemon(true).build());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ServerDispatcher{queue=" + getQueueSize() + ", active=" + getActiveCount()
+                + ", completed=" + getCompletedTaskCount() + ", rejected=" + getRejectedCount() + "}";
+    }
+}
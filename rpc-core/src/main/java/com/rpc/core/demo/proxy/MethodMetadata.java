@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.proxy;
+
+import com.rpc.core.demo.api.ProviderInfo;
+import com.rpc.core.demo.api.RpcRequest;
+import com.rpc.core.demo.discovery.DiscoveryClient;
+import com.rpc.core.demo.filter.client.CallTimeout;
+import com.rpc.core.demo.filter.client.FilterLine;
+import com.rpc.core.demo.filter.client.Hedge;
+import com.rpc.core.demo.filter.client.HedgePolicy;
+import com.rpc.core.demo.filter.client.RetryBudget;
+import com.rpc.core.demo.netty.common.BinarySerializer;
+import lombok.Getter;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 客户端代理中每个接口方法的调用元数据，第一次调用时生成，之后每次调用直接使用
+ * 包括请求中的各个字符串、参数类型、方法key、结果的反序列化类型，以及按 Provider 列表快照缓存的过滤结果
+ *
+ * @author lw1243925457
+ */
+@Getter
+class MethodMetadata {
+
+    private final String service;
+    private final String group;
+    private final String version;
+    private final String methodName;
+    private final List<String> tags;
+
+    /**
+     * service:group:version，DiscoveryClient 中 Provider 列表的key
+     */
+    private final String providerKey;
+
+    /**
+     * service:group:version#method(paramType,paramType)，握手下发的方法目录的key
+     */
+    private final String methodKey;
+
+    private final String[] parameterTypes;
+
+    /**
+     * 返回值为 CompletableFuture 的方法走异步调用
+     */
+    private final boolean async;
+
+    /**
+     * 结果的反序列化类型：同步方法为返回值类型，异步方法为 CompletableFuture 的泛型参数
+     */
+    private final Type resultType;
+
+    /**
+     * 服务的重试预算，同一个服务的方法共用
+     */
+    private final RetryBudget retryBudget;
+
+    /**
+     * 方法的超时时间，0 表示不限制
+     */
+    private final long timeoutMillis;
+
+    /**
+     * 幂等方法的对冲策略，其他方法为 null
+     */
+    private final HedgePolicy hedgePolicy;
+
+    /**
+     * 可缓存过滤器的过滤结果，Provider 列表快照变化时重新生成
+     */
+    private volatile ProviderView providerView;
+
+    MethodMetadata(Class<?> serviceClass, Method method, String group, String version, List<String> tags) {
+        this.service = serviceClass.getName().intern();
+        this.group = (group == null ? ProviderRegistry.DEFAULT : group).intern();
+        this.version = (version == null ? ProviderRegistry.DEFAULT : version).intern();
+        this.methodName = method.getName().intern();
+        this.tags = Collections.unmodifiableList(tags);
+        this.providerKey = (service + ":" + this.group + ":" + this.version).intern();
+        this.parameterTypes = Arrays.stream(method.getParameterTypes()).map(Class::getName).toArray(String[]::new);
+        this.methodKey = (providerKey + "#" + ProviderInvoker.signature(methodName, parameterTypes)).intern();
+        this.async = CompletableFuture.class.equals(method.getReturnType());
+        this.resultType = resultType(method, async);
+        this.retryBudget = RetryBudget.forService(providerKey);
+        this.hedgePolicy = Hedge.policy(providerKey, service, methodName);
+        this.timeoutMillis = CallTimeout.timeoutMillis(service, methodName);
+        // 方法签名中的类型允许在二进制序列化的响应中出现
+        BinarySerializer.allowTypes(method);
+    }
+
+    /**
+     * 生成这次调用的请求，字符串都使用预先生成的
+     * @param args method params
+     * @return request
+     */
+    RpcRequest newRequest(Object[] args) {
+        RpcRequest rpcRequest = new RpcRequest();
+        rpcRequest.setServiceClass(service);
+        rpcRequest.setMethod(methodName);
+        rpcRequest.setArgv(args);
+        rpcRequest.setParameterTypes(parameterTypes);
+        rpcRequest.setGroup(group);
+        rpcRequest.setVersion(version);
+        rpcRequest.setMethodKey(methodKey);
+        return rpcRequest;
+    }
+
+    /**
+     * 返回可用的 Provider 列表：Provider 列表快照没变时直接使用缓存的过滤结果，只执行每次调用都需要的过滤器
+     * @param discoveryClient discovery client
+     * @return provider list
+     */
+    List<ProviderInfo> providers(DiscoveryClient discoveryClient) {
+        List<ProviderInfo> source = discoveryClient.getProviderList(providerKey);
+        if (source.isEmpty()) {
+            return source;
+        }
+        ProviderView view = providerView;
+        if (view == null || view.source != source) {
+            view = new ProviderView(source, FilterLine.filterCacheable(source, tags));
+            providerView = view;
+        }
+        return FilterLine.filterDynamic(providerKey, view.filtered, tags);
+    }
+
+    private static Type resultType(Method method, boolean async) {
+        Type returnType = method.getGenericReturnType();
+        if (!async) {
+            return returnType;
+        }
+        if (returnType instanceof ParameterizedType) {
+            return ((ParameterizedType) returnType).getActualTypeArguments()[0];
+        }
+        return Object.class;
+    }
+
+    /**
+     * Provider 列表快照和对应的过滤结果
+     */
+    private static final class ProviderView {
+
+        private final List<ProviderInfo> source;
+        private final List<ProviderInfo> filtered;
+
+        private ProviderView(List<ProviderInfo> source, List<ProviderInfo> filtered) {
+            this.source = source;
+            this.filtered = filtered;
+        }
+    }
+}
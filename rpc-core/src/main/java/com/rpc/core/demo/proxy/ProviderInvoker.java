@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.proxy;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.util.TypeUtils;
+import com.google.common.primitives.Primitives;
+import com.rpc.core.demo.annotation.DispatchMode;
+import com.rpc.core.demo.filter.server.GradientLimiter;
+import lombok.Getter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+
+/**
+ * Provider 方法的调用器，服务初始化时为每个接口方法生成一个
+ * 使用绑定了实现类实例的 MethodHandle，参数数组展开、返回值装箱都在 MethodHandle 中完成，
+ * 请求到来时只需要一次查表和一次直接调用，不再每次反射查找方法
+ *
+ * @author lw1243925457
+ */
+@Getter
+public class ProviderInvoker {
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    /**
+     * 方法ID，握手时下发给客户端
+     */
+    private final int id;
+
+    /**
+     * 接口名
+     */
+    private final String service;
+
+    /**
+     * 方法签名：方法名(参数类型,参数类型)
+     */
+    private final String signature;
+
+    private final Method method;
+
+    private final DispatchMode dispatchMode;
+
+    /**
+     * 服务的并发限制，同一个服务的所有方法共用，为空时不限制
+     */
+    private final GradientLimiter limiter;
+
+    /**
+     * (Object[]) -> Object
+     */
+    private final MethodHandle handle;
+
+    private final Class<?>[] parameterClasses;
+
+    /**
+     * 参数类型名称，和请求中的参数类型直接比较
+     */
+    private final String[] parameterTypeNames;
+
+    private final Type[] parameterTypes;
+
+    ProviderInvoker(int id, String serviceName, Object service, Method method, DispatchMode dispatchMode,
+                    GradientLimiter limiter) throws IllegalAccessException {
+        this.id = id;
+        this.service = serviceName;
+        this.signature = signature(method.getName(), method.getParameterTypes());
+        this.method = method;
+        this.dispatchMode = dispatchMode;
+        this.limiter = limiter;
+        this.parameterClasses = method.getParameterTypes();
+        this.parameterTypes = method.getGenericParameterTypes();
+        this.parameterTypeNames = Arrays.stream(parameterClasses).map(Class::getName).toArray(String[]::new);
+        this.handle = MethodHandles.publicLookup().unreflect(method)
+                .bindTo(service)
+                .asSpreader(Object[].class, parameterClasses.length)
+                .asType(INVOKER_TYPE);
+    }
+
+    /**
+     * 调用 Provider 方法，方法抛出的异常原样抛出，不包装成 InvocationTargetException
+     * @param args 请求参数
+     * @return result
+     * @throws Throwable provider exception
+     */
+    public Object invoke(Object[] args) throws Throwable {
+        Object[] arguments = args == null ? new Object[0] : args;
+        if (arguments.length != parameterClasses.length) {
+            throw new IllegalArgumentException("Method " + signature + " expects " + parameterClasses.length
+                    + " arguments, but got " + arguments.length);
+        }
+        convertArguments(arguments);
+        return (Object) handle.invokeExact(arguments);
+    }
+
+    /**
+     * json 反序列化得到的参数可能是 JSONObject、数字类型不一致等，按方法参数类型转换
+     */
+    private void convertArguments(Object[] args) {
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (arg == null) {
+                continue;
+            }
+            if (arg instanceof JSON || !Primitives.wrap(parameterClasses[i]).isInstance(arg)) {
+                args[i] = TypeUtils.cast(arg, parameterTypes[i], ParserConfig.getGlobalInstance());
+            }
+        }
+    }
+
+    /**
+     * @param methodName 方法名
+     * @param parameterTypes 参数类型
+     * @return 方法签名：方法名(参数类型,参数类型)
+     */
+    public static String signature(String methodName, Class<?>[] parameterTypes) {
+        String[] names = new String[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            names[i] = parameterTypes[i].getName();
+        }
+        return signature(methodName, names);
+    }
+
+    public static String signature(String methodName, String[] parameterTypes) {
+        StringBuilder builder = new StringBuilder(methodName).append('(');
+        if (parameterTypes != null) {
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(parameterTypes[i]);
+            }
+        }
+        return builder.append(')').toString();
+    }
+}
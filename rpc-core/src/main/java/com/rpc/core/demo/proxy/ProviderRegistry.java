@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.proxy;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 不可变的 Provider 方法注册表：service -> group -> version -> 方法名 -> 调用器
+ * 查找时逐级取 Map，参数类型直接比较字符串数组，不拼接key，不分配对象
+ * 注册新的 Provider 时复制生成新的注册表再整体替换（copy-on-write），读取方不需要加锁
+ *
+ * @author lw1243925457
+ */
+final class ProviderRegistry {
+
+    static final String DEFAULT = "default";
+
+    static final ProviderRegistry EMPTY = new ProviderRegistry(ImmutableMap.of(), new ProviderInvoker[0], ImmutableMap.of());
+
+    private final ImmutableMap<String, ImmutableMap<String, ImmutableMap<String, ImmutableMap<String, ProviderInvoker[]>>>> services;
+
+    /**
+     * 方法ID即下标
+     */
+    private final ProviderInvoker[] invokers;
+
+    /**
+     * 方法目录：service:group:version#method(paramType,paramType) --> 方法ID
+     */
+    private final ImmutableMap<String, Integer> catalogue;
+
+    private ProviderRegistry(ImmutableMap<String, ImmutableMap<String, ImmutableMap<String, ImmutableMap<String, ProviderInvoker[]>>>> services,
+                             ProviderInvoker[] invokers, ImmutableMap<String, Integer> catalogue) {
+        this.services = services;
+        this.invokers = invokers;
+        this.catalogue = catalogue;
+    }
+
+    /**
+     * 查找方法调用器，group、version 为空时使用 default
+     * @param parameterTypes 参数类型名称，为空时只按方法名匹配，方法名有重载时找不到
+     * @return invoker，找不到时返回 null
+     */
+    ProviderInvoker find(String service, String group, String version, String method, String[] parameterTypes) {
+        ImmutableMap<String, ImmutableMap<String, ImmutableMap<String, ProviderInvoker[]>>> groups = services.get(service);
+        if (groups == null) {
+            return null;
+        }
+        ImmutableMap<String, ImmutableMap<String, ProviderInvoker[]>> versions = groups.get(group == null ? DEFAULT : group);
+        if (versions == null) {
+            return null;
+        }
+        ImmutableMap<String, ProviderInvoker[]> methods = versions.get(version == null ? DEFAULT : version);
+        if (methods == null) {
+            return null;
+        }
+        ProviderInvoker[] candidates = methods.get(method);
+        if (candidates == null) {
+            return null;
+        }
+        if (parameterTypes == null) {
+            return candidates.length == 1 ? candidates[0] : null;
+        }
+        for (ProviderInvoker candidate: candidates) {
+            if (Arrays.equals(candidate.getParameterTypeNames(), parameterTypes)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    ProviderInvoker find(int methodId) {
+        return methodId >= 0 && methodId < invokers.length ? invokers[methodId] : null;
+    }
+
+    ImmutableMap<String, Integer> getCatalogue() {
+        return catalogue;
+    }
+
+    int nextMethodId() {
+        return invokers.length;
+    }
+
+    /**
+     * @param signature 方法签名：方法名(参数类型,参数类型)
+     * @return 已登记的方法ID，没有时返回 null
+     */
+    Integer methodId(String service, String group, String version, String signature) {
+        return catalogue.get(service + ":" + group + ":" + version + "#" + signature);
+    }
+
+    /**
+     * 生成加入了一个 Provider 的新注册表，同一个 service:group:version 重复注册时替换原来的方法：
+     * 签名相同的方法应沿用原来的方法ID（见 methodId），新注册中没有的方法ID置空，
+     * 客户端缓存的旧ID收到请求无法处理的响应，不会调用到其他方法
+     * @param invokersToAdd 调用器，沿用的方法ID之外从 nextMethodId() 开始连续分配
+     * @return new registry
+     */
+    ProviderRegistry with(String service, String group, String version, List<ProviderInvoker> invokersToAdd) {
+        Map<String, List<ProviderInvoker>> byName = new LinkedHashMap<>();
+        for (ProviderInvoker invoker: invokersToAdd) {
+            byName.computeIfAbsent(invoker.getMethod().getName(), k -> new ArrayList<>()).add(invoker);
+        }
+        Map<String, ProviderInvoker[]> methods = new LinkedHashMap<>();
+        byName.forEach((name, list) -> methods.put(name, list.toArray(new ProviderInvoker[0])));
+
+        Map<String, ImmutableMap<String, ImmutableMap<String, ProviderInvoker[]>>> groups =
+                new HashMap<>(services.getOrDefault(service, ImmutableMap.of()));
+        Map<String, ImmutableMap<String, ProviderInvoker[]>> versions = new HashMap<>(groups.getOrDefault(group, ImmutableMap.of()));
+        versions.put(version, ImmutableMap.copyOf(methods));
+        groups.put(group, ImmutableMap.copyOf(versions));
+
+        Map<String, ImmutableMap<String, ImmutableMap<String, ImmutableMap<String, ProviderInvoker[]>>>> newServices =
+                new HashMap<>(services);
+        newServices.put(service, ImmutableMap.copyOf(groups));
+
+        int length = invokers.length;
+        for (ProviderInvoker invoker: invokersToAdd) {
+            length = Math.max(length, invoker.getId() + 1);
+        }
+        ProviderInvoker[] newInvokers = Arrays.copyOf(invokers, length);
+        Map<String, Integer> newCatalogue = new LinkedHashMap<>(catalogue);
+        String provider = service + ":" + group + ":" + version + "#";
+        newCatalogue.entrySet().removeIf(entry -> {
+            if (!entry.getKey().startsWith(provider)) {
+                return false;
+            }
+            newInvokers[entry.getValue()] = null;
+            return true;
+        });
+        for (ProviderInvoker invoker: invokersToAdd) {
+            newInvokers[invoker.getId()] = invoker;
+            newCatalogue.put(provider + invoker.getSignature(), invoker.getId());
+        }
+        return new ProviderRegistry(ImmutableMap.copyOf(newServices), newInvokers, ImmutableMap.copyOf(newCatalogue));
+    }
+}
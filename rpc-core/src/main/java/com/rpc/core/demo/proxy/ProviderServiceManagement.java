@@ -17,20 +17,26 @@
 
 package com.rpc.core.demo.proxy;
 
-import com.google.common.base.Joiner;
+import com.rpc.core.demo.annotation.DispatchMode;
 import com.rpc.core.demo.annotation.ProviderService;
 import com.rpc.core.demo.api.RpcRequest;
 import com.rpc.core.demo.discovery.DiscoveryServer;
+import com.rpc.core.demo.filter.server.GradientLimiter;
+import com.rpc.core.demo.netty.common.BinarySerializer;
+import com.rpc.core.demo.netty.common.NettyTransport;
+import com.rpc.core.demo.netty.common.Serializers;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.URL;
 import java.util.*;
 
 /**
  * 提供RPC Provider 的初始化
- * 初始化实例放入 Map 中，方便后续的获取
+ * 初始化实例的方法调用器放入不可变的注册表中，方便后续的获取
+ * 注册时生成新的注册表整体替换，请求查找时只读一次 volatile 引用，不加锁
  *
  * @author lw1243925457
  */
@@ -38,10 +44,9 @@ import java.util.*;
 public class ProviderServiceManagement {
 
     /**
-     * 通过服务名、分组、版本作为key，确实接口实现类的实例
-     * service:group:version --> class
+     * 通过服务名、分组、版本、方法名和参数类型，确定接口实现类方法的调用器
      */
-    private static Map<String, Object> proxyMap = new HashMap<>();
+    private static volatile ProviderRegistry registry = ProviderRegistry.EMPTY;
 
     /**
      * 初始化：通过扫描包路径，获取所有实现类，将其注册到ZK中
@@ -52,6 +57,19 @@ public class ProviderServiceManagement {
      * @throws Exception exception
      */
     public static void init(String packageName, int port) throws Exception {
+        init(packageName, port, null);
+    }
+
+    /**
+     * 初始化，同时注册 Unix domain socket 地址，同一台机器上的客户端优先通过它访问
+     * @param packageName 接口实现类的包路径
+     * @param port 服务监听的端口
+     * @param domainSocketPath Unix domain socket 监听路径，为空时不注册
+     * @throws Exception exception
+     */
+    public static void init(String packageName, int port, String domainSocketPath) throws Exception {
+        String domainSocketUrl = domainSocketPath == null ? null : NettyTransport.UNIX_SCHEME + "://" + domainSocketPath;
+
         System.out.println("\n-------- Loader Rpc Provider class start ----------------------\n");
 
         DiscoveryServer serviceRegister = new DiscoveryServer();
@@ -65,34 +83,108 @@ public class ProviderServiceManagement {
             String group = annotation.group();
             String version = annotation.version();
             List<String> tags = Arrays.asList(annotation.tags().split(","));
-            String provider = Joiner.on(":").join(annotation.service(), group, version);
             int weight = annotation.weight();
 
-            proxyMap.put(provider, c.newInstance());
+            GradientLimiter limiter = annotation.initialConcurrency() > 0
+                    ? new GradientLimiter(annotation.initialConcurrency(), annotation.minConcurrency(), annotation.maxConcurrency())
+                    : null;
+            if (!annotation.serializer().isEmpty()) {
+                Serializers.setServiceSerializer(annotation.service(), annotation.serializer());
+            }
+            register(annotation.service(), group, version, c.newInstance(), annotation.dispatch(), limiter);
 
-            serviceRegister.registerService(annotation.service(), group, version, port, tags, weight);
+            serviceRegister.registerService(annotation.service(), group, version, port, tags, weight, domainSocketUrl);
 
-            log.info("load provider class: " + annotation.service() + ":" + group + ":" + version + " :: " + c.getName());
+            log.info("load provider class: " + annotation.service() + ":" + group + ":" + version + " :: " + c.getName()
+                    + ", dispatch: " + annotation.dispatch() + (limiter == null ? "" : ", limiter: " + limiter));
         }
         System.out.println("\n-------- Loader Rpc Provider class end ----------------------\n");
     }
 
     /**
-     * 返回接口实现类的实例
-     * @param request request
-     * @return serviceimpl
+     * 为接口实现类的每个接口方法生成调用器并登记，只在本地登记，不注册到ZK
+     * @param service 接口名
+     * @param group group
+     * @param version version
+     * @param instance 接口实现类的实例
+     * @param dispatchMode 服务端执行方式
+     * @throws IllegalAccessException 方法不能访问
+     */
+    public static void register(String service, String group, String version, Object instance,
+                                DispatchMode dispatchMode) throws IllegalAccessException {
+        register(service, group, version, instance, dispatchMode, null);
+    }
+
+    /**
+     * 登记服务，服务的所有方法共用一个并发限制
+     * @param service 接口名
+     * @param group group
+     * @param version version
+     * @param instance 接口实现类的实例
+     * @param dispatchMode 服务端执行方式
+     * @param limiter 并发限制，为空时不限制
+     * @throws IllegalAccessException 方法不能访问
      */
-    public static Object getProviderService(RpcRequest request) {
-        String group = "default";
-        String version= "default";
-        String className = request.getServiceClass();
-        if (request.getGroup() != null) {
-            group = request.getGroup();
+    public static synchronized void register(String service, String group, String version, Object instance,
+                                             DispatchMode dispatchMode, GradientLimiter limiter)
+            throws IllegalAccessException {
+        ProviderRegistry current = registry;
+        List<ProviderInvoker> invokers = new ArrayList<>();
+        int nextMethodId = current.nextMethodId();
+        for (Method method: serviceMethods(service, instance.getClass())) {
+            // 重复注册时签名相同的方法沿用原来的方法ID，客户端握手时拿到的方法ID继续有效
+            Integer methodId = current.methodId(service, group, version,
+                    ProviderInvoker.signature(method.getName(), method.getParameterTypes()));
+            invokers.add(new ProviderInvoker(methodId != null ? methodId : nextMethodId++, service, instance, method,
+                    dispatchMode, limiter));
+            // 方法签名中的类型允许在二进制序列化的请求中出现
+            BinarySerializer.allowTypes(method);
         }
-        if (request.getVersion() != null) {
-            version = request.getVersion();
+        registry = current.with(service, group, version, invokers);
+    }
+
+    /**
+     * 返回请求对应的方法调用器：请求带参数类型时按参数类型匹配重载方法，否则只按方法名查找
+     * @param request request
+     * @return invoker，找不到时返回 null
+     */
+    public static ProviderInvoker getInvoker(RpcRequest request) {
+        return registry.find(request.getServiceClass(), request.getGroup(), request.getVersion(), request.getMethod(),
+                request.getParameterTypes());
+    }
+
+    /**
+     * 返回方法ID对应的调用器
+     * @param methodId 握手时下发的方法ID
+     * @return invoker，找不到时返回 null
+     */
+    public static ProviderInvoker getInvoker(int methodId) {
+        return registry.find(methodId);
+    }
+
+    /**
+     * 方法目录，握手时下发给客户端
+     * @return method key --> method id
+     */
+    public static Map<String, Integer> getCatalogue() {
+        return registry.getCatalogue();
+    }
+
+    /**
+     * 服务对外提供的方法：能加载到接口时使用接口方法，否则使用实现类的 public 方法
+     */
+    private static Method[] serviceMethods(String service, Class<?> implClass) {
+        try {
+            Class<?> serviceClass = Class.forName(service, false, implClass.getClassLoader());
+            if (serviceClass.isInterface() && serviceClass.isAssignableFrom(implClass)) {
+                return serviceClass.getMethods();
+            }
+        } catch (ClassNotFoundException e) {
+            log.info("Can't load service interface " + service + ", use public methods of " + implClass.getName());
         }
-        return proxyMap.get(Joiner.on(":").join(className, group, version));
+        return Arrays.stream(implClass.getMethods())
+                .filter(m -> m.getDeclaringClass() != Object.class)
+                .toArray(Method[]::new);
     }
 
     /**
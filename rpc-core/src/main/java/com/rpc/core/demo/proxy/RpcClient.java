@@ -20,20 +20,30 @@ package com.rpc.core.demo.proxy;
 import com.google.common.base.Joiner;
 import com.rpc.core.demo.balance.loadbalance.WeightBalance;
 import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
 import net.bytebuddy.ByteBuddy;
 import net.bytebuddy.implementation.InvocationHandlerAdapter;
 
+import java.lang.reflect.Constructor;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author lw1243925457
  */
+@Slf4j
 public class RpcClient {
 
     private static String balanceAlgorithmName = WeightBalance.NAME;
 
-    private ConcurrentHashMap<String, Object> proxyCache = new ConcurrentHashMap<>();
+    /**
+     * 服务接口 -> 编译期生成的存根构造函数，每个接口只查找一次
+     */
+    private static final Map<Class<?>, Optional<Constructor<?>>> STUB_CONSTRUCTORS = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Object> proxyCache = new ConcurrentHashMap<>();
 
     public static void setBalanceAlgorithmName(String balanceAlgorithm) {
         balanceAlgorithmName = balanceAlgorithm;
@@ -43,75 +53,99 @@ public class RpcClient {
         return balanceAlgorithmName;
     }
 
-    private Object getProxy(String className) {
-        return proxyCache.get(className);
+    public <T> T create(Class<T> serviceClass) {
+        return serviceClass.cast(proxyCache.computeIfAbsent(serviceClass.getName(), key -> newProxy(serviceClass)));
     }
 
-    private Boolean isExit(String className) {
-        return proxyCache.containsKey(className);
+    public <T> T create(Class<T> serviceClass, String group, String version) {
+        String invoker = Joiner.on(":").join(serviceClass.getName(), group, version);
+        return serviceClass.cast(proxyCache.computeIfAbsent(invoker, key -> newProxy(serviceClass, group, version)));
     }
 
-    private void add(String className, Object proxy) {
-        proxyCache.put(className, proxy);
+    public <T> T create(Class<T> serviceClass, String group, String version, List<String> tags) {
+        String invoker = Joiner.on(":").join(serviceClass.getName(), group, version, tags.toString());
+        return serviceClass.cast(proxyCache.computeIfAbsent(invoker,
+                key -> newProxy(serviceClass, group, version, tags)));
     }
 
-    public <T> T create(Class<T> serviceClass) {
-        String invoker = serviceClass.getName();
-        if (!isExit(invoker)) {
-            add(invoker, newProxy(serviceClass));
-        }
-        return (T) getProxy(invoker);
+    /**
+     * 创建异步代理，调用不会阻塞调用线程
+     * asyncClass 是 serviceClass 的异步视图：方法名和参数相同，返回值为 CompletableFuture，如 UserServiceAsync
+     * @param asyncClass async view interface
+     * @param serviceClass remote service interface
+     * @return async proxy
+     */
+    public <T> T createAsync(Class<T> asyncClass, Class<?> serviceClass) {
+        String invoker = Joiner.on(":").join(asyncClass.getName(), serviceClass.getName());
+        return asyncClass.cast(proxyCache.computeIfAbsent(invoker,
+                key -> newProxy(asyncClass, new RpcInvocationHandler(serviceClass))));
     }
 
-    public <T> T create(Class<T> serviceClass, String group, String version) {
-        String invoker = Joiner.on(":").join(serviceClass.getName(), group, version);
-        if (!isExit(invoker)) {
-            add(invoker, newProxy(serviceClass, group, version));
-        }
-        return (T) getProxy(invoker);
+    public <T> T createAsync(Class<T> asyncClass, Class<?> serviceClass, String group, String version) {
+        String invoker = Joiner.on(":").join(asyncClass.getName(), serviceClass.getName(), group, version);
+        return asyncClass.cast(proxyCache.computeIfAbsent(invoker,
+                key -> newProxy(asyncClass, new RpcInvocationHandler(serviceClass, group, version))));
     }
 
-    public <T> T create(Class<T> serviceClass, String group, String version, List<String> tags) {
-        String invoker = Joiner.on(":").join(serviceClass.getName(), group, version, tags.toString());
-        if (!isExit(invoker)) {
-            add(invoker, newProxy(serviceClass, group, version, tags));
-        }
-        return (T) getProxy(invoker);
+    public <T> T createAsync(Class<T> asyncClass, Class<?> serviceClass, String group, String version,
+                             List<String> tags) {
+        String invoker = Joiner.on(":").join(asyncClass.getName(), serviceClass.getName(), group, version,
+                tags.toString());
+        return asyncClass.cast(proxyCache.computeIfAbsent(invoker,
+                key -> newProxy(asyncClass, new RpcInvocationHandler(serviceClass, group, version, tags))));
     }
 
-    @SneakyThrows
     private <T> T newProxy(Class<T> serviceClass, String group, String version) {
-        return (T) new ByteBuddy().subclass(Object.class)
-                .implement(serviceClass)
-                .intercept(InvocationHandlerAdapter.of(new RpcInvocationHandler(serviceClass, group, version)))
-                .make()
-                .load(RpcClient.class.getClassLoader())
-                .getLoaded()
-                .getDeclaredConstructor()
-                .newInstance();
+        return newProxy(serviceClass, new RpcInvocationHandler(serviceClass, group, version));
     }
 
-    @SneakyThrows
     private <T> T newProxy(Class<T> serviceClass, String group, String version, List<String> tags) {
-        return (T) new ByteBuddy().subclass(Object.class)
-                .implement(serviceClass)
-                .intercept(InvocationHandlerAdapter.of(new RpcInvocationHandler(serviceClass, group, version, tags)))
-                .make()
-                .load(RpcClient.class.getClassLoader())
-                .getLoaded()
-                .getDeclaredConstructor()
-                .newInstance();
+        return newProxy(serviceClass, new RpcInvocationHandler(serviceClass, group, version, tags));
     }
 
-    @SneakyThrows
     private <T> T newProxy(Class<T> serviceClass) {
-        return (T) new ByteBuddy().subclass(Object.class)
-                .implement(serviceClass)
-                .intercept(InvocationHandlerAdapter.of(new RpcInvocationHandler(serviceClass)))
+        return newProxy(serviceClass, new RpcInvocationHandler(serviceClass));
+    }
+
+    /**
+     * 生成实现 proxyClass 的代理实例，方法调用都交给 handler 处理
+     * 编译期生成了存根时直接实例化存根，否则使用 ByteBuddy 生成代理类
+     * @param proxyClass 代理实现的接口
+     * @param handler invocation handler
+     * @return proxy
+     */
+    @SneakyThrows
+    private <T> T newProxy(Class<T> proxyClass, RpcInvocationHandler handler) {
+        Optional<Constructor<?>> stub = STUB_CONSTRUCTORS.computeIfAbsent(proxyClass, RpcClient::findStub);
+        if (stub.isPresent()) {
+            return proxyClass.cast(stub.get().newInstance(handler));
+        }
+        return proxyClass.cast(new ByteBuddy().subclass(Object.class)
+                .implement(proxyClass)
+                .intercept(InvocationHandlerAdapter.of(handler))
                 .make()
                 .load(RpcClient.class.getClassLoader())
                 .getLoaded()
                 .getDeclaredConstructor()
-                .newInstance();
+                .newInstance());
+    }
+
+    /**
+     * 查找接口的存根类：接口名 + _RpcStub，需要继承 RpcStub 并实现该接口
+     * @param proxyClass service interface
+     * @return stub constructor
+     */
+    private static Optional<Constructor<?>> findStub(Class<?> proxyClass) {
+        try {
+            Class<?> stubClass = Class.forName(proxyClass.getName() + RpcStub.SUFFIX, true, proxyClass.getClassLoader());
+            if (!RpcStub.class.isAssignableFrom(stubClass) || !proxyClass.isAssignableFrom(stubClass)) {
+                log.info("Ignore invalid stub class: " + stubClass.getName());
+                return Optional.empty();
+            }
+            log.info("Client use generated stub: " + stubClass.getName());
+            return Optional.of(stubClass.getConstructor(RpcInvocationHandler.class));
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return Optional.empty();
+        }
     }
 }
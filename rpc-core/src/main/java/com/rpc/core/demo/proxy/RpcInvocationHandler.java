@@ -17,36 +17,58 @@
 
 package com.rpc.core.demo.proxy;
 
-import com.alibaba.fastjson.JSON;
+import com.rpc.core.demo.api.ProviderInfo;
 import com.rpc.core.demo.api.RpcRequest;
 import com.rpc.core.demo.api.RpcResponse;
 import com.rpc.core.demo.discovery.DiscoveryClient;
-import com.rpc.core.demo.filter.client.Retry;
+import com.rpc.core.demo.exception.RpcException;
+import com.rpc.core.demo.exception.RpcTimeoutException;
+import com.rpc.core.demo.filter.client.CallTimeout;
+import com.rpc.core.demo.filter.client.EndpointLimiter;
+import com.rpc.core.demo.filter.client.HedgePolicy;
+import com.rpc.core.demo.filter.client.OutlierDetector;
+import com.rpc.core.demo.filter.client.RetryContext;
+import com.rpc.core.demo.netty.client.ClientTimer;
 import com.rpc.core.demo.netty.client.RpcNettyClientSync;
+import com.rpc.core.demo.netty.common.Deadline;
+import io.netty.util.Timeout;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cglib.proxy.MethodInterceptor;
 import org.springframework.cglib.proxy.MethodProxy;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * 用于jdk、cglib、buddy
+ * 用于jdk、cglib、buddy，以及编译期生成的存根 {@link RpcStub}
+ * 返回值为 CompletableFuture 的接口方法（如 UserServiceAsync）走异步调用，其他方法同步等待结果
  *
  * @author lw1243925457
  */
 @Slf4j
 public class RpcInvocationHandler implements InvocationHandler, MethodInterceptor {
 
+
     private final Class<?> serviceClass;
     private final String group;
     private final String version;
     private final DiscoveryClient discoveryClient = DiscoveryClient.getInstance();
     private final List<String> tags = new ArrayList<>();
-    private int retryTime = 0;
+
+    /**
+     * 方法 -> 调用元数据，每个方法第一次调用时生成
+     */
+    private final Map<Method, MethodMetadata> methodMetadata = new ConcurrentHashMap<>();
 
     <T> RpcInvocationHandler(Class<T> serviceClass) {
         this.serviceClass = serviceClass;
@@ -72,91 +94,277 @@ public class RpcInvocationHandler implements InvocationHandler, MethodIntercepto
 
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) {
-        try {
-            return process(serviceClass, method, args);
-        } catch (Exception e) {
-            if (retryTime < Retry.getRetryLimit()) {
-                log.info("send to rpc server exception, will retry");
-                retryTime += 1;
-                invoke(proxy, method, args);
-            } else {
-                log.info("retry limit, end");
-                retryTime = 0;
-            }
-        }
-        return null;
+        return invoke(metadata(method), args);
     }
 
     @Override
     public Object intercept(Object o, Method method, Object[] args, MethodProxy methodProxy) {
-        try {
-            return process(serviceClass, method, args);
-        } catch (Exception e) {
-            if (retryTime < Retry.getRetryLimit()) {
-                log.info("send to rpc server exception, will retry");
-                retryTime += 1;
-                intercept(o, method, args, methodProxy);
-            } else {
-                log.info("retry limit, end");
-                retryTime = 0;
-            }
+        return invoke(metadata(method), args);
+    }
+
+    /**
+     * 代理和生成的存根共用的调用入口，异步方法直接返回结果Future，同步方法等待结果
+     * 每次调用有自己的重试状态和截止时间，超时后调用以 RpcTimeoutException 结束，在途请求被取消
+     * @param metadata method metadata
+     * @param args method params
+     * @return result
+     */
+    Object invoke(MethodMetadata metadata, Object[] args) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        Deadline deadline = CallTimeout.deadline(metadata.getTimeoutMillis());
+        if (deadline != null) {
+            expireAt(result, deadline, metadata);
+        }
+        attempt(metadata, args, new RetryContext(metadata.getRetryBudget(), deadline), result);
+        if (metadata.isAsync()) {
+            return result;
         }
-        return null;
+        return await(result);
     }
 
     /**
-     * 发送请求到服务端
-     * 获取结果后序列号成对象，返回
-     * @param service service name
+     * 方法的调用元数据，第一次调用时生成并缓存
      * @param method service method
-     * @param params method params
-     * @return object
+     * @return metadata
      */
-    private Object process(Class<?> service, Method method, Object[] params) {
-        log.info("Client proxy instance method invoke");
+    MethodMetadata metadata(Method method) {
+        MethodMetadata metadata = methodMetadata.get(method);
+        if (metadata == null) {
+            metadata = methodMetadata.computeIfAbsent(method,
+                    m -> new MethodMetadata(serviceClass, m, group, version, tags));
+        }
+        return metadata;
+    }
 
-        // 自定义了Rpc请求的结构 RpcRequest,放入接口名称、方法名、参数
-        log.info("Build Rpc request");
-        RpcRequest rpcRequest = new RpcRequest();
-        rpcRequest.setServiceClass(service.getName());
-        rpcRequest.setMethod(method.getName());
-        rpcRequest.setArgv(params);
-        rpcRequest.setGroup(group);
-        rpcRequest.setVersion(version);
-
-        // 从DiscoveryClient中获取某个Provider的请求地址
-        String url = null;
+    /**
+     * 到截止时间还没有结果时以超时异常结束，使用客户端共用的时间轮，结果先完成时取消定时任务
+     * @param result 结果Future
+     * @param deadline deadline
+     * @param metadata method metadata
+     */
+    private void expireAt(CompletableFuture<Object> result, Deadline deadline, MethodMetadata metadata) {
+        if (deadline.isExpired()) {
+            result.completeExceptionally(new RpcTimeoutException("Invoke timeout: " + metadata.getMethodKey()));
+            return;
+        }
+        Timeout timeout = ClientTimer.INSTANCE.newTimeout(
+                task -> result.completeExceptionally(new RpcTimeoutException("Invoke timeout: " + metadata.getMethodKey())),
+                deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+        result.whenComplete((value, throwable) -> timeout.cancel());
+    }
+
+    /**
+     * 阻塞等待结果，调用失败（超时、Provider 全部不可用、熔断、业务异常等）时抛出失败原因，
+     * 不能从代理方法直接抛出的受检异常包装成 RpcException
+     * @param result 结果Future
+     * @return object
+     */
+    private Object await(CompletableFuture<Object> result) {
         try {
-            url = discoveryClient.getProviders(service.getName(), group, version, tags, method.getName());
-        } catch (Exception e) {
-            e.printStackTrace();
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RpcException("Interrupted while waiting for response", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            log.info("Client receive exception: " + cause);
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RpcException(cause.getMessage(), cause);
         }
+    }
 
-        if (url == null) {
+    /**
+     * 选一个 Provider 发送请求，请求没有被执行的失败在退避后换一个 Provider 重新发送，最终结果写入 result
+     * 退避等待在客户端定时器中进行，不占用调用线程和 IO 线程
+     * @param metadata method metadata
+     * @param params method params
+     * @param retryContext 这次调用的重试状态
+     * @param result 结果Future
+     */
+    private void attempt(MethodMetadata metadata, Object[] params, RetryContext retryContext,
+                         CompletableFuture<Object> result) {
+        // 已经超时（如重试退避期间）的调用不再发送
+        if (result.isDone()) {
+            return;
+        }
+        // 使用缓存的过滤结果，排除失败过的 Provider，负载均衡选出一个Provider
+        List<ProviderInfo> providers = retryContext.filter(metadata.providers(discoveryClient));
+        if (providers.isEmpty()) {
             System.out.println("\nCan't find provider\n");
-            return null;
+            result.completeExceptionally(new RpcException("Can't find provider: " + metadata.getService()));
+            return;
+        }
+        // 排除在途请求达到限制的 Provider，全部达到限制时直接失败，不在网络中堆积请求
+        providers = EndpointLimiter.available(providers);
+        if (providers.isEmpty()) {
+            result.completeExceptionally(new RpcException("All providers saturated: " + metadata.getService()));
+            return;
         }
+        ProviderInfo provider = discoveryClient.select(providers, metadata.getService(), metadata.getMethodName());
+
+        Deadline deadline = retryContext.getDeadline();
+        CompletableFuture<Object> response = metadata.getHedgePolicy() == null
+                ? send(metadata, params, provider, deadline)
+                : sendHedged(metadata, params, providers, provider, deadline);
+        // 调用超时结束后取消在途请求
+        result.whenComplete((value, throwable) -> response.cancel(false));
+        response.whenComplete((value, throwable) -> {
+            if (throwable == null) {
+                retryContext.onSuccess();
+                result.complete(value);
+                return;
+            }
+            if (!retryContext.shouldRetry(provider, throwable)) {
+                result.completeExceptionally(throwable);
+                return;
+            }
+            long backoff = retryContext.backoffMillis();
+            log.info("send to rpc server exception, retry " + retryContext.getRetries() + " after " + backoff + "ms");
+            ClientTimer.INSTANCE.newTimeout(timeout -> attempt(metadata, params, retryContext, result),
+                    backoff, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * 幂等方法的对冲发送：请求超过对冲延迟还没有响应时，向另一个 Provider 再发一次
+     * 使用先成功的响应并取消另一个请求，两个都失败时以最后的失败结束，交给重试处理
+     * @param metadata method metadata
+     * @param params method params
+     * @param providers 可选的 provider list
+     * @param provider 第一个请求的 Provider
+     * @param deadline 调用的截止时间，可以为 null
+     * @return 结果Future，被取消时取消所有请求
+     */
+    private CompletableFuture<Object> sendHedged(MethodMetadata metadata, Object[] params, List<ProviderInfo> providers,
+                                                 ProviderInfo provider, Deadline deadline) {
+        HedgePolicy policy = metadata.getHedgePolicy();
+        policy.onRequest();
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        List<CompletableFuture<Object>> requests = new CopyOnWriteArrayList<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+
+        requests.add(race(policy, send(metadata, params, provider, deadline), true, System.nanoTime(), result,
+                outstanding, requests));
+        result.whenComplete((value, throwable) -> {
+            if (result.isCancelled()) {
+                requests.forEach(request -> request.cancel(false));
+            }
+        });
+        if (providers.size() < 2) {
+            return result;
+        }
+
+        Timeout hedgeTimeout = ClientTimer.INSTANCE.newTimeout(timeout -> {
+            if (result.isDone() || !policy.tryHedge()) {
+                return;
+            }
+            List<ProviderInfo> others = new ArrayList<>(providers);
+            others.remove(provider);
+            ProviderInfo hedgeProvider = discoveryClient.select(others, metadata.getService(), metadata.getMethodName());
+            log.info("Client send hedged request to " + hedgeProvider.getUrl());
+            outstanding.incrementAndGet();
+            requests.add(race(policy, send(metadata, params, hedgeProvider, deadline), false, System.nanoTime(),
+                    result, outstanding, requests));
+        }, policy.delayNanos(), TimeUnit.NANOSECONDS);
+        result.whenComplete((value, throwable) -> hedgeTimeout.cancel());
+        return result;
+    }
+
+    /**
+     * 对冲中的一个请求完成：成功时结束调用并取消其他请求，失败时只有最后一个请求失败才结束调用
+     * 对冲延迟按第一个请求的延迟分布计算：第一个请求不论成功、失败还是被取消都记录从发送开始的时间，
+     * 只记录先返回的请求会让分布偏低；对冲请求的时间从对冲时才开始，不记录
+     * @param primary 是否第一个请求
+     * @param startNanos 请求的发送时间
+     */
+    private CompletableFuture<Object> race(HedgePolicy policy, CompletableFuture<Object> request, boolean primary,
+                                           long startNanos, CompletableFuture<Object> result, AtomicInteger outstanding,
+                                           List<CompletableFuture<Object>> requests) {
+        request.whenComplete((value, throwable) -> {
+            if (primary) {
+                policy.recordLatency(System.nanoTime() - startNanos);
+            }
+            if (request.isCancelled()) {
+                return;
+            }
+            if (throwable == null) {
+                if (result.complete(value)) {
+                    for (CompletableFuture<Object> other: requests) {
+                        if (other != request) {
+                            other.cancel(false);
+                        }
+                    }
+                }
+                return;
+            }
+            if (outstanding.decrementAndGet() == 0) {
+                result.completeExceptionally(throwable);
+            }
+        });
+        return request;
+    }
+
+    /**
+     * 发送请求到 Provider，不阻塞调用线程，返回结果的Future
+     * 收到响应、超时和被取消的请求按服务记录延迟用于慢节点检测，连接失败等没有等待响应的失败不记录
+     * @param metadata method metadata
+     * @param params method params
+     * @param provider provider
+     * @param deadline 调用的截止时间，剩余时间随请求发送给服务端，可以为 null
+     * @return 结果Future
+     */
+    private CompletableFuture<Object> send(MethodMetadata metadata, Object[] params, ProviderInfo provider,
+                                           Deadline deadline) {
+        log.info("Client proxy instance method invoke");
+
+        // 自定义了Rpc请求的结构 RpcRequest,放入接口名称、方法名、参数，字符串都是预先生成的
+        RpcRequest rpcRequest = metadata.newRequest(params);
+
+        CompletableFuture<Object> result = new CompletableFuture<>();
 
         // 客户端使用的 netty，发送请求到服务端，拿到结果（自定义结构：rpcfxResponse)
         log.info("Client send request to Server");
-        RpcResponse rpcResponse;
-        try {
-            rpcResponse = RpcNettyClientSync.getInstance().getResponse(rpcRequest, url);
-        } catch (InterruptedException | URISyntaxException e) {
-            e.printStackTrace();
-            return null;
-        }
+        long startNanos = System.nanoTime();
+        long timeoutNanos = deadline == null ? 0 : Math.max(0, deadline.remainingNanos());
+        CompletableFuture<RpcResponse<Object>> responseFuture = RpcNettyClientSync.getInstance()
+                .sendRequest(rpcRequest, provider, metadata.getResultType(), deadline);
 
-        log.info("Client receive response Object");
-        assert rpcResponse != null;
-        if (!rpcResponse.getStatus()) {
-            log.info("Client receive exception");
-            rpcResponse.getException().printStackTrace();
-            return null;
-        }
+        responseFuture.whenComplete((rpcResponse, throwable) -> {
+            if (throwable != null) {
+                if (responseFuture.isCancelled()) {
+                    OutlierDetector.recordUnanswered(metadata.getProviderKey(), provider, System.nanoTime() - startNanos,
+                            timeoutNanos, deadline != null && deadline.isExpired());
+                }
+                result.completeExceptionally(throwable);
+                return;
+            }
+            OutlierDetector.record(metadata.getProviderKey(), provider, System.nanoTime() - startNanos);
+
+            log.info("Client receive response Object");
+            if (!rpcResponse.getStatus()) {
+                Exception exception = rpcResponse.getException();
+                result.completeExceptionally(exception != null ? exception : new RpcException("Provider invoke failed"));
+                return;
+            }
 
-        // 序列化成对象返回
-        log.info("Response:: " + rpcResponse.getResult());
-        return JSON.parse(rpcResponse.getResult().toString());
+            // 结果已经按方法返回类型反序列化成对象
+            log.info("Response:: " + rpcResponse.getResult());
+            result.complete(rpcResponse.getResult());
+        });
+        // 对冲中较慢的请求、超时的请求被取消时，同时取消底层的在途请求
+        result.whenComplete((value, throwable) -> {
+            if (result.isCancelled()) {
+                responseFuture.cancel(false);
+            }
+        });
+        return result;
     }
 }
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.proxy;
+
+import com.rpc.core.demo.exception.RpcException;
+
+import java.lang.reflect.Method;
+
+/**
+ * 编译期生成的客户端存根的基类，存根由 rpc-stub-processor 根据 {@link com.rpc.core.demo.annotation.GenerateStubs} 生成
+ * 存根直接实现服务接口，每个方法按下标取预先生成的调用元数据，不经过反射和 InvocationHandler
+ * 类名为 接口名 + {@link #SUFFIX}，RpcClient 找到存根时优先使用，否则回退到 ByteBuddy 代理
+ *
+ * @author lw1243925457
+ */
+public abstract class RpcStub {
+
+    /**
+     * 生成的存根类名后缀
+     */
+    public static final String SUFFIX = "_RpcStub";
+
+    protected static final Object[] NO_ARGS = new Object[0];
+
+    private final RpcInvocationHandler handler;
+    private final String name;
+
+    /**
+     * 存根中方法的调用元数据，下标与存根生成的方法表一致
+     */
+    private final MethodMetadata[] methods;
+
+    protected RpcStub(RpcInvocationHandler handler, Class<?> stubInterface, Method[] methods) {
+        this.handler = handler;
+        this.name = stubInterface.getName() + SUFFIX;
+        this.methods = new MethodMetadata[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            this.methods[i] = handler.metadata(methods[i]);
+        }
+    }
+
+    /**
+     * 调用方法表中第 index 个方法
+     * @param index method index
+     * @param args method params
+     * @return result
+     */
+    protected final Object invoke(int index, Object[] args) {
+        return handler.invoke(methods[index], args);
+    }
+
+    /**
+     * 调用返回基本类型的方法，结果为 null 时抛出 RpcException，避免拆箱时出现 NullPointerException
+     * @param index method index
+     * @param args method params
+     * @return result
+     */
+    protected final Object invokeNonNull(int index, Object[] args) {
+        Object result = handler.invoke(methods[index], args);
+        if (result == null) {
+            throw new RpcException("Null result for primitive return type: " + methods[index].getService()
+                    + "#" + methods[index].getMethodName());
+        }
+        return result;
+    }
+
+    /**
+     * 存根类加载时查找接口方法，只执行一次
+     * @param type service interface
+     * @param name method name
+     * @param parameterTypes method parameter types
+     * @return method
+     */
+    protected static Method method(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            throw new RpcException("Stub method not found: " + type.getName() + "#" + name, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + "@" + Integer.toHexString(System.identityHashCode(this));
+    }
+}
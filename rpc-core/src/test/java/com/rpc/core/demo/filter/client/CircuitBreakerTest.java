@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.filter.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author lw1243925457
+ */
+class CircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(2);
+
+    @BeforeEach
+    void setUp() {
+        CircuitBreakerConfig.setMinimumCalls(4);
+        CircuitBreakerConfig.setOpenMillis(60_000);
+        CircuitBreakerConfig.setHalfOpenProbes(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        CircuitBreakerConfig.setMinimumCalls(20);
+        CircuitBreakerConfig.setOpenMillis(5000);
+        CircuitBreakerConfig.setHalfOpenProbes(3);
+    }
+
+    private static void call(CircuitBreaker breaker, boolean success, long latencyNanos) {
+        CircuitBreaker.Permit permit = breaker.tryAcquire();
+        assertTrue(permit.isAcquired());
+        breaker.onResult(permit, success, latencyNanos);
+    }
+
+    /**
+     * 打开后立即可以进入半开
+     */
+    private static CircuitBreaker openBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 10);
+        for (int i = 0; i < 4; i++) {
+            call(breaker, false, FAST);
+        }
+        assertTrue(breaker.isOpen());
+        CircuitBreakerConfig.setOpenMillis(0);
+        return breaker;
+    }
+
+    @Test
+    void stayClosedBelowMinimumCalls() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 10);
+        for (int i = 0; i < 3; i++) {
+            call(breaker, false, FAST);
+        }
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    void openOnFailureRate() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 10);
+        call(breaker, true, FAST);
+        call(breaker, true, FAST);
+        call(breaker, false, FAST);
+        assertFalse(breaker.isOpen());
+        call(breaker, false, FAST);
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.isAvailable());
+        assertFalse(breaker.tryAcquire().isAcquired());
+    }
+
+    @Test
+    void openOnSlowCallRate() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 10);
+        for (int i = 0; i < 4; i++) {
+            call(breaker, true, SLOW);
+        }
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    void halfOpenLimitsProbes() {
+        CircuitBreaker breaker = openBreaker();
+        CircuitBreaker.Permit probe = breaker.tryAcquire();
+        assertTrue(probe.isAcquired());
+        assertTrue(breaker.tryAcquire().isAcquired());
+        assertFalse(breaker.tryAcquire().isAcquired());
+        assertFalse(breaker.isAvailable());
+
+        // 取消的探测请求归还名额
+        breaker.release(probe);
+        assertTrue(breaker.tryAcquire().isAcquired());
+    }
+
+    @Test
+    void releaseOfNormalPermitKeepsProbes() {
+        CircuitBreakerConfig.setOpenMillis(0);
+        CircuitBreaker breaker = new CircuitBreaker("test", 10);
+        CircuitBreaker.Permit normal = breaker.tryAcquire();
+        assertTrue(normal.isAcquired());
+        for (int i = 0; i < 4; i++) {
+            call(breaker, false, FAST);
+        }
+
+        // 打开之前发出的请求在半开时取消，不能归还探测名额
+        assertTrue(breaker.tryAcquire().isAcquired());
+        assertTrue(breaker.tryAcquire().isAcquired());
+        breaker.release(normal);
+        assertFalse(breaker.tryAcquire().isAcquired());
+    }
+
+    @Test
+    void staleResultsDoNotCloseCircuit() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 10);
+        CircuitBreaker.Permit normal = breaker.tryAcquire();
+        for (int i = 0; i < 4; i++) {
+            call(breaker, false, FAST);
+        }
+        CircuitBreakerConfig.setOpenMillis(0);
+        CircuitBreaker.Permit oldProbe = breaker.tryAcquire();
+        CircuitBreakerConfig.setOpenMillis(60_000);
+        breaker.onResult(breaker.tryAcquire(), false, FAST);
+        assertTrue(breaker.isOpen());
+
+        // 打开之前发出的普通请求和上一轮半开的探测请求在新一轮半开时成功返回，不计入探测结果
+        CircuitBreakerConfig.setOpenMillis(0);
+        assertTrue(breaker.isAvailable());
+        breaker.onResult(normal, true, FAST);
+        breaker.onResult(oldProbe, true, FAST);
+        breaker.onResult(oldProbe, true, FAST);
+        CircuitBreaker.Permit first = breaker.tryAcquire();
+        CircuitBreaker.Permit second = breaker.tryAcquire();
+        assertFalse(breaker.tryAcquire().isAcquired());
+
+        breaker.onResult(first, true, FAST);
+        breaker.onResult(second, true, FAST);
+        assertTrue(breaker.tryAcquire().isAcquired());
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    void closeWhenProbesSucceed() {
+        CircuitBreaker breaker = openBreaker();
+        call(breaker, true, FAST);
+        assertFalse(breaker.isOpen());
+        call(breaker, true, FAST);
+
+        // 关闭后窗口清空，之前的失败不再计入
+        CircuitBreakerConfig.setOpenMillis(60_000);
+        call(breaker, false, FAST);
+        call(breaker, true, FAST);
+        call(breaker, true, FAST);
+        call(breaker, true, FAST);
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.tryAcquire().isAcquired());
+        assertTrue(breaker.tryAcquire().isAcquired());
+        assertTrue(breaker.tryAcquire().isAcquired());
+    }
+
+    @Test
+    void reopenWhenProbeFails() {
+        CircuitBreaker breaker = openBreaker();
+        call(breaker, true, FAST);
+        CircuitBreakerConfig.setOpenMillis(60_000);
+        call(breaker, false, FAST);
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.tryAcquire().isAcquired());
+    }
+
+    @Test
+    void reopenWhenProbeIsSlow() {
+        CircuitBreaker breaker = openBreaker();
+        call(breaker, true, FAST);
+        CircuitBreakerConfig.setOpenMillis(60_000);
+        call(breaker, true, SLOW);
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    void countsDoNotOverflow() {
+        // 每秒超过 2^21 次调用时计数也不能溢出到失败数中
+        CircuitBreaker breaker = new CircuitBreaker("test", 10);
+        for (int i = 0; i < (1 << 21) + 2; i++) {
+            breaker.onResult(CircuitBreaker.Permit.NORMAL, true, FAST);
+        }
+        breaker.onResult(CircuitBreaker.Permit.NORMAL, false, FAST);
+        breaker.onResult(CircuitBreaker.Permit.NORMAL, false, FAST);
+        assertFalse(breaker.isOpen());
+    }
+}
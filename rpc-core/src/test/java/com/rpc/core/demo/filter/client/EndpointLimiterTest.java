@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.filter.client;
+
+import com.rpc.core.demo.api.ProviderInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author lw1243925457
+ */
+class EndpointLimiterTest {
+
+    @AfterEach
+    void tearDown() {
+        ClientConcurrency.setInitialLimit(0);
+    }
+
+    private static ProviderInfo provider(String url) {
+        return new ProviderInfo("svc", url, Collections.singletonList("a"), 1);
+    }
+
+    @Test
+    void rejectAtLimit() {
+        EndpointLimiter limiter = new EndpointLimiter(2, 1, 10);
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.isSaturated());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.isSaturated());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(2, limiter.getInflight());
+    }
+
+    @Test
+    void additiveIncreaseOnSuccess() {
+        EndpointLimiter limiter = new EndpointLimiter(4, 1, 10);
+        // 每个成功的请求增加 1/limit，一轮 limit 个请求大约加一
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.onSuccess();
+        }
+        assertEquals(4, limiter.getLimit());
+        assertTrue(limiter.tryAcquire());
+        limiter.onSuccess();
+        assertEquals(5, limiter.getLimit());
+        assertEquals(0, limiter.getInflight());
+    }
+
+    @Test
+    void multiplicativeDecreaseOnDrop() {
+        ClientConcurrency.setBackoffRatio(0.5);
+        try {
+            EndpointLimiter limiter = new EndpointLimiter(8, 3, 10);
+            assertTrue(limiter.tryAcquire());
+            limiter.onDrop();
+            assertEquals(4, limiter.getLimit());
+            assertTrue(limiter.tryAcquire());
+            limiter.onDrop();
+            assertEquals(3, limiter.getLimit());
+            assertEquals(0, limiter.getInflight());
+        } finally {
+            ClientConcurrency.setBackoffRatio(0.9);
+        }
+    }
+
+    @Test
+    void releaseKeepsLimit() {
+        EndpointLimiter limiter = new EndpointLimiter(4, 1, 10);
+        assertTrue(limiter.tryAcquire());
+        limiter.release();
+        assertEquals(4, limiter.getLimit());
+        assertEquals(0, limiter.getInflight());
+    }
+
+    @Test
+    void limitCappedAtMax() {
+        EndpointLimiter limiter = new EndpointLimiter(3, 1, 3);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.onSuccess();
+        }
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    void disabledByDefault() {
+        ProviderInfo provider = provider("http://127.0.0.1:19001");
+        List<ProviderInfo> providers = Collections.singletonList(provider);
+        assertNull(EndpointLimiter.forEndpoint(provider));
+        assertSame(providers, EndpointLimiter.available(providers));
+    }
+
+    @Test
+    void excludeSaturatedEndpoints() {
+        ClientConcurrency.setInitialLimit(1);
+        ProviderInfo first = provider("http://127.0.0.1:19002");
+        ProviderInfo second = provider("http://127.0.0.1:19003");
+        List<ProviderInfo> providers = Arrays.asList(first, second);
+        assertSame(providers, EndpointLimiter.available(providers));
+
+        EndpointLimiter limiter = EndpointLimiter.forEndpoint(first);
+        assertSame(limiter, EndpointLimiter.forEndpoint(provider("http://127.0.0.1:19002")));
+        assertTrue(limiter.tryAcquire());
+        assertEquals(Collections.singletonList(second), EndpointLimiter.available(providers));
+
+        assertTrue(EndpointLimiter.forEndpoint(second).tryAcquire());
+        assertTrue(EndpointLimiter.available(providers).isEmpty());
+
+        limiter.onSuccess();
+        EndpointLimiter.forEndpoint(second).onSuccess();
+        assertSame(providers, EndpointLimiter.available(providers));
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.filter.client;
+
+import com.rpc.core.demo.api.ProviderInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author lw1243925457
+ */
+class OutlierDetectorTest {
+
+    private final OutlierFilter filter = new OutlierFilter();
+
+    @AfterEach
+    void tearDown() {
+        OutlierDetection.setMaxEjectionPercent(0.5);
+    }
+
+    private static List<ProviderInfo> providers(int count, int firstPort) {
+        List<ProviderInfo> providers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            providers.add(new ProviderInfo("svc", "http://127.0.0.1:" + (firstPort + i), Collections.singletonList("a"), 1));
+        }
+        return providers;
+    }
+
+    private static void record(String providerKey, ProviderInfo provider, long latencyMillis) {
+        EndpointLatency stats = EndpointLatency.forEndpoint(providerKey, provider);
+        for (int i = 0; i < 64; i++) {
+            stats.record(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        }
+    }
+
+    private static boolean isEjected(String providerKey, ProviderInfo provider) {
+        EndpointLatency stats = EndpointLatency.find(providerKey, provider);
+        return stats != null && stats.isEjected();
+    }
+
+    @Test
+    void ejectSlowEndpoint() {
+        String key = "eject:default:default";
+        List<ProviderInfo> providers = providers(3, 19101);
+        record(key, providers.get(0), 1);
+        record(key, providers.get(1), 1);
+        record(key, providers.get(2), 100);
+
+        OutlierDetector.detect(key, providers);
+
+        assertFalse(isEjected(key, providers.get(0)));
+        assertFalse(isEjected(key, providers.get(1)));
+        assertTrue(isEjected(key, providers.get(2)));
+        assertEquals(providers.subList(0, 2), filter.filter(key, providers, null));
+    }
+
+    @Test
+    void ejectEndpointThatTimesOut() {
+        String key = "timeout:default:default";
+        List<ProviderInfo> providers = providers(3, 19151);
+        record(key, providers.get(0), 1);
+        record(key, providers.get(1), 1);
+        // 第三个地址一直不响应，请求在 50ms 的截止时间前后被取消，至少按截止时间记录
+        EndpointLatency stats = EndpointLatency.forEndpoint(key, providers.get(2));
+        for (int i = 0; i < 64; i++) {
+            long elapsed = TimeUnit.MILLISECONDS.toNanos(49 + i % 3);
+            stats.record(OutlierDetector.unansweredLatency(elapsed, TimeUnit.MILLISECONDS.toNanos(50), true));
+        }
+        assertTrue(stats.percentile(99) >= TimeUnit.MILLISECONDS.toNanos(50));
+
+        OutlierDetector.detect(key, providers);
+
+        assertFalse(isEjected(key, providers.get(0)));
+        assertFalse(isEjected(key, providers.get(1)));
+        assertTrue(isEjected(key, providers.get(2)));
+    }
+
+    @Test
+    void cancelledAttemptRecordsElapsed() {
+        long elapsed = TimeUnit.MILLISECONDS.toNanos(5);
+        long timeout = TimeUnit.MILLISECONDS.toNanos(50);
+        // 对冲中落后被取消的请求只等待了 elapsed，没有超时
+        assertEquals(elapsed, OutlierDetector.unansweredLatency(elapsed, timeout, false));
+        assertEquals(timeout, OutlierDetector.unansweredLatency(elapsed, timeout, true));
+    }
+
+    @Test
+    void statsArePerService() {
+        String slowService = "slow:default:default";
+        String fastService = "fast:default:default";
+        List<ProviderInfo> providers = providers(3, 19111);
+        record(slowService, providers.get(0), 1);
+        record(slowService, providers.get(1), 1);
+        record(slowService, providers.get(2), 100);
+        // 同一个地址上的另一个服务本身就比较慢，但各个地址之间没有差别
+        for (ProviderInfo provider : providers) {
+            record(fastService, provider, 100);
+        }
+
+        OutlierDetector.detect(slowService, providers);
+        OutlierDetector.detect(fastService, providers);
+
+        assertTrue(isEjected(slowService, providers.get(2)));
+        assertFalse(isEjected(fastService, providers.get(2)));
+        assertSame(providers, filter.filter(fastService, providers, null));
+        assertNull(EndpointLatency.find("other:default:default", providers.get(2)));
+        assertSame(providers, filter.filter("other:default:default", providers, null));
+    }
+
+    @Test
+    void ejectAtMostMaxPercent() {
+        OutlierDetection.setMaxEjectionPercent(0.25);
+        String key = "cap:default:default";
+        List<ProviderInfo> providers = providers(4, 19121);
+        record(key, providers.get(0), 1);
+        record(key, providers.get(1), 1);
+        record(key, providers.get(2), 50);
+        record(key, providers.get(3), 100);
+
+        OutlierDetector.detect(key, providers);
+
+        // 只摘除最慢的一个
+        assertFalse(isEjected(key, providers.get(2)));
+        assertTrue(isEjected(key, providers.get(3)));
+
+        // 已经达到上限，再次检测也不摘除
+        OutlierDetector.detect(key, providers);
+        assertFalse(isEjected(key, providers.get(2)));
+    }
+
+    @Test
+    void filterKeepsWithinMaxPercent() {
+        String key = "shrink:default:default";
+        List<ProviderInfo> providers = providers(4, 19131);
+        record(key, providers.get(0), 1);
+        record(key, providers.get(1), 1);
+        record(key, providers.get(2), 100);
+        record(key, providers.get(3), 100);
+
+        OutlierDetector.detect(key, providers);
+        assertTrue(isEjected(key, providers.get(2)));
+        assertTrue(isEjected(key, providers.get(3)));
+        assertEquals(providers.subList(0, 2), filter.filter(key, providers, null));
+
+        // Provider 列表变小后，两个被摘除的地址超过了一半，只过滤掉一个
+        List<ProviderInfo> shrunk = providers.subList(1, 4);
+        assertEquals(Arrays.asList(providers.get(1), providers.get(3)), filter.filter(key, shrunk, null));
+    }
+
+    @Test
+    void filterWithoutServiceKeepsAll() {
+        String key = "nokey:default:default";
+        List<ProviderInfo> providers = providers(3, 19141);
+        record(key, providers.get(0), 1);
+        record(key, providers.get(1), 1);
+        record(key, providers.get(2), 100);
+        OutlierDetector.detect(key, providers);
+
+        assertSame(providers, filter.filter(providers, null));
+    }
+}
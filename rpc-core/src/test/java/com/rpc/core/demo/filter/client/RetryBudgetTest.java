@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.filter.client;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author lw1243925457
+ */
+class RetryBudgetTest {
+
+    @Test
+    void exhaustedAtHalfOfMaxTokens() {
+        RetryBudget budget = new RetryBudget(10, 0.1);
+        for (int i = 0; i < 4; i++) {
+            budget.onFailure();
+        }
+        assertTrue(budget.canRetry());
+        budget.onFailure();
+        assertFalse(budget.canRetry());
+    }
+
+    @Test
+    void successesRefill() {
+        RetryBudget budget = new RetryBudget(10, 0.1);
+        for (int i = 0; i < 20; i++) {
+            budget.onFailure();
+        }
+        assertFalse(budget.canRetry());
+        // 令牌不会减到 0 以下：0 + 0.1 * 50 = 5，还没有超过一半
+        for (int i = 0; i < 50; i++) {
+            budget.onSuccess();
+        }
+        assertFalse(budget.canRetry());
+        budget.onSuccess();
+        assertTrue(budget.canRetry());
+    }
+
+    @Test
+    void successesCappedAtMaxTokens() {
+        RetryBudget budget = new RetryBudget(10, 0.1);
+        for (int i = 0; i < 100; i++) {
+            budget.onSuccess();
+        }
+        for (int i = 0; i < 5; i++) {
+            budget.onFailure();
+        }
+        assertFalse(budget.canRetry());
+    }
+
+    @Test
+    void sharedPerService() {
+        assertSame(RetryBudget.forService("svc:g:v"), RetryBudget.forService("svc:g:v"));
+    }
+}
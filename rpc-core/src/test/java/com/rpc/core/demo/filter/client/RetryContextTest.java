@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.filter.client;
+
+import com.rpc.core.demo.api.ProviderInfo;
+import com.rpc.core.demo.exception.RetryableException;
+import com.rpc.core.demo.exception.RpcException;
+import com.rpc.core.demo.netty.common.Deadline;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author lw1243925457
+ */
+class RetryContextTest {
+
+    private final ProviderInfo first = provider("10.0.0.1:8080");
+    private final ProviderInfo second = provider("10.0.0.2:8080");
+
+    @BeforeEach
+    void setUp() {
+        Retry.setRetryLimit(2);
+        Retry.setBackoffBaseMillis(10);
+        Retry.setBackoffMaxMillis(1000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Retry.setRetryLimit(0);
+        Retry.setBackoffBaseMillis(10);
+        Retry.setBackoffMaxMillis(1000);
+    }
+
+    private static ProviderInfo provider(String url) {
+        ProviderInfo provider = new ProviderInfo();
+        provider.setUrl(url);
+        return provider;
+    }
+
+    private static RetryContext context() {
+        return new RetryContext(new RetryBudget(10, 0.1), null);
+    }
+
+    @Test
+    void onlyRetryableFailuresAreRetried() {
+        RetryContext context = context();
+        assertFalse(context.shouldRetry(first, new RpcException("Connection closed")));
+        assertTrue(context.shouldRetry(first, new RetryableException("Server busy")));
+        assertTrue(context.shouldRetry(second, new CompletionException(new RetryableException("Send failed"))));
+        assertEquals(2, context.getRetries());
+    }
+
+    @Test
+    void stopAtRetryLimit() {
+        RetryContext context = context();
+        assertTrue(context.shouldRetry(first, new RetryableException("busy")));
+        assertTrue(context.shouldRetry(second, new RetryableException("busy")));
+        assertFalse(context.shouldRetry(first, new RetryableException("busy")));
+    }
+
+    @Test
+    void stopWhenBudgetExhausted() {
+        Retry.setRetryLimit(100);
+        RetryBudget budget = new RetryBudget(10, 0.1);
+        for (int i = 0; i < 4; i++) {
+            budget.onFailure();
+        }
+        RetryContext context = new RetryContext(budget, null);
+        assertFalse(context.shouldRetry(first, new RetryableException("busy")));
+    }
+
+    @Test
+    void nonRetryableFailureDoesNotRefillBudget() {
+        RetryBudget budget = new RetryBudget(10, 0.1);
+        for (int i = 0; i < 5; i++) {
+            budget.onFailure();
+        }
+        assertFalse(budget.canRetry());
+
+        RetryContext context = new RetryContext(budget, null);
+        assertFalse(context.shouldRetry(first, new RpcException("Connection closed")));
+        assertFalse(budget.canRetry());
+
+        context.onSuccess();
+        assertTrue(budget.canRetry());
+    }
+
+    @Test
+    void stopAfterDeadline() {
+        RetryContext context = new RetryContext(new RetryBudget(10, 0.1), Deadline.after(0, TimeUnit.MILLISECONDS));
+        assertFalse(context.shouldRetry(first, new RetryableException("busy")));
+    }
+
+    @Test
+    void excludeFailedProviders() {
+        RetryContext context = context();
+        List<ProviderInfo> providers = Arrays.asList(first, second);
+        assertEquals(providers, context.filter(providers));
+
+        context.shouldRetry(first, new RetryableException("busy"));
+        assertEquals(Collections.singletonList(second), context.filter(providers));
+
+        context.shouldRetry(second, new RetryableException("busy"));
+        assertEquals(providers, context.filter(providers));
+    }
+
+    @Test
+    void backoffGrowsAndIsCapped() {
+        Retry.setRetryLimit(100);
+        Retry.setBackoffMaxMillis(50);
+        RetryContext context = new RetryContext(new RetryBudget(1000, 0.1), null);
+        long[] ceilings = {10, 20, 40, 50, 50};
+        for (long ceiling : ceilings) {
+            assertTrue(context.shouldRetry(first, new RetryableException("busy")));
+            for (int i = 0; i < 100; i++) {
+                long backoff = context.backoffMillis();
+                assertTrue(backoff >= 0 && backoff <= ceiling, "backoff " + backoff + " > " + ceiling);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.filter.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author lw1243925457
+ */
+class GradientLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * 每轮以 concurrency 个并发请求执行，直到完成一个采样窗口（20 个请求）
+     */
+    private static void runWindow(GradientLimiter limiter, int concurrency, long rttNanos) {
+        int done = 0;
+        while (done < 20) {
+            int acquired = 0;
+            while (acquired < concurrency && limiter.tryAcquire()) {
+                acquired++;
+            }
+            for (int i = 0; i < acquired; i++) {
+                limiter.onComplete(rttNanos);
+            }
+            done += acquired;
+        }
+    }
+
+    @Test
+    void rejectAboveLimit() {
+        GradientLimiter limiter = new GradientLimiter(2, 1, 10);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(2, limiter.getInflight());
+        assertEquals(1, limiter.getRejected());
+
+        limiter.release();
+        assertTrue(limiter.tryAcquire());
+        limiter.onComplete(FAST);
+        limiter.onComplete(FAST);
+        assertEquals(0, limiter.getInflight());
+    }
+
+    @Test
+    void initialLimitClampedToRange() {
+        assertEquals(10, new GradientLimiter(100, 1, 10).getLimit());
+        assertEquals(5, new GradientLimiter(1, 5, 10).getLimit());
+        assertThrows(IllegalArgumentException.class, () -> new GradientLimiter(1, 0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new GradientLimiter(1, 5, 4));
+    }
+
+    @Test
+    void growWhileLatencyIsStable() {
+        GradientLimiter limiter = new GradientLimiter(10, 1, 1000);
+        for (int i = 0; i < 10; i++) {
+            runWindow(limiter, limiter.getLimit(), FAST);
+        }
+        assertTrue(limiter.getLimit() > 10, limiter.toString());
+    }
+
+    @Test
+    void shrinkWhenLatencyRises() {
+        GradientLimiter limiter = new GradientLimiter(20, 1, 1000);
+        for (int i = 0; i < 5; i++) {
+            runWindow(limiter, limiter.getLimit(), FAST);
+        }
+        int before = limiter.getLimit();
+        for (int i = 0; i < 5; i++) {
+            runWindow(limiter, limiter.getLimit(), SLOW);
+        }
+        assertTrue(limiter.getLimit() < before, before + " -> " + limiter);
+    }
+
+    @Test
+    void keepLimitWhenUnderused() {
+        GradientLimiter limiter = new GradientLimiter(20, 1, 1000);
+        for (int i = 0; i < 10; i++) {
+            runWindow(limiter, 1, i < 5 ? FAST : SLOW);
+        }
+        assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    void stayWithinRange() {
+        GradientLimiter limiter = new GradientLimiter(8, 5, 10);
+        for (int i = 0; i < 20; i++) {
+            runWindow(limiter, limiter.getLimit(), FAST);
+        }
+        assertEquals(10, limiter.getLimit());
+        // 延迟持续升高，限制一直缩小，直到最小值
+        long rtt = FAST;
+        for (int i = 0; i < 60; i++) {
+            rtt += rtt / 2;
+            runWindow(limiter, limiter.getLimit(), rtt);
+        }
+        assertEquals(5, limiter.getLimit());
+        assertEquals(0, limiter.getInflight());
+    }
+}
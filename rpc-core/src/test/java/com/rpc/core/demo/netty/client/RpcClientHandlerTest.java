@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.netty.client;
+
+import com.rpc.core.demo.api.RpcResponse;
+import com.rpc.core.demo.exception.RetryableException;
+import com.rpc.core.demo.netty.common.FrameHeader;
+import com.rpc.core.demo.netty.common.MessageType;
+import com.rpc.core.demo.netty.common.RpcProtocol;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 只有帧头的响应状态：熔断器按响应 Future 是否正常完成计数，这里固定各个状态的结束方式
+ *
+ * @author lw1243925457
+ */
+class RpcClientHandlerTest {
+
+    private static CompletableFuture<RpcResponse<Object>> respond(byte status) {
+        RpcClientHandler handler = new RpcClientHandler();
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+        // 连接建立时发出的握手
+        ReferenceCountUtil.release(channel.readOutbound());
+
+        CompletableFuture<RpcResponse<Object>> future = handler.register(1L, Object.class);
+        channel.writeInbound(RpcProtocol.headerOnly(MessageType.RESPONSE, 1L, status));
+        channel.finishAndReleaseAll();
+        return future;
+    }
+
+    /**
+     * 拒绝状态是调用方的问题，生成失败响应正常结束，熔断器计为收到了响应
+     */
+    @ParameterizedTest
+    @ValueSource(bytes = {FrameHeader.STATUS_FORBIDDEN, FrameHeader.STATUS_BAD_REQUEST})
+    void rejectedStatusCompletesWithFailedResponse(byte status) throws Exception {
+        CompletableFuture<RpcResponse<Object>> future = respond(status);
+        assertTrue(future.isDone());
+        assertFalse(future.isCompletedExceptionally());
+
+        RpcResponse<Object> response = future.get();
+        assertFalse(response.getStatus());
+        assertEquals(FrameHeader.statusMessage(status), response.getException().getMessage());
+    }
+
+    /**
+     * 繁忙和过载时请求没有执行，以可重试异常结束，熔断器计为失败
+     */
+    @ParameterizedTest
+    @ValueSource(bytes = {FrameHeader.STATUS_BUSY, FrameHeader.STATUS_OVERLOADED})
+    void sheddingStatusCompletesExceptionally(byte status) {
+        CompletableFuture<RpcResponse<Object>> future = respond(status);
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertTrue(e.getCause() instanceof RetryableException);
+    }
+}
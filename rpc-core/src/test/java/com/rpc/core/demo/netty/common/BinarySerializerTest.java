@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.netty.common;
+
+import com.rpc.core.demo.api.RpcRequest;
+import com.rpc.core.demo.exception.RpcException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author lw1243925457
+ */
+class BinarySerializerTest {
+
+    private final BinarySerializer serializer = new BinarySerializer();
+
+    static class Item {
+        private String name;
+        private int count;
+        private List<Long> values;
+
+        Item() {
+        }
+
+        Item(String name, int count, List<Long> values) {
+            this.name = name;
+            this.count = count;
+            this.values = values;
+        }
+    }
+
+    static class NoDefault {
+        private final String name;
+
+        NoDefault(String name) {
+            this.name = name;
+        }
+    }
+
+    static class Unregistered {
+        private String name;
+    }
+
+    private ByteBuf write(Object value) {
+        ByteBuf buf = Unpooled.buffer();
+        serializer.serialize(value, buf);
+        return buf;
+    }
+
+    @Test
+    void roundTripRequest() {
+        BinarySerializer.allowType(Item.class);
+        RpcRequest request = new RpcRequest();
+        request.setServiceClass("svc");
+        request.setMethod("find");
+        request.setArgv(new Object[]{1, "a", new Item("x", 3, Arrays.asList(1L, 2L)), new int[]{4, 5}});
+
+        RpcRequest result = serializer.deserialize(write(request), RpcRequest.class);
+
+        assertEquals("svc", result.getServiceClass());
+        assertEquals("find", result.getMethod());
+        assertEquals(1, result.getArgv()[0]);
+        assertEquals("a", result.getArgv()[1]);
+        Item item = (Item) result.getArgv()[2];
+        assertEquals("x", item.name);
+        assertEquals(3, item.count);
+        assertEquals(Arrays.asList(1L, 2L), item.values);
+        assertArrayEquals(new int[]{4, 5}, (int[]) result.getArgv()[3]);
+    }
+
+    @Test
+    void rejectClassNotAllowed() {
+        Set<Object> set = new HashSet<>();
+        set.add(new ProcessBuilder("true"));
+        RpcException e = assertThrows(RpcException.class, () -> serializer.deserialize(write(set), Object.class));
+        assertTrue(e.getMessage().contains("not allowed"), e.getMessage());
+
+        assertThrows(RpcException.class, () -> serializer.deserialize(write(new Unregistered()), Object.class));
+    }
+
+    @Test
+    void rejectRootOfWrongType() {
+        assertThrows(RpcException.class, () -> serializer.deserialize(write(new Date()), RpcRequest.class));
+        assertThrows(RpcException.class, () -> serializer.deserialize(write("text"), Integer.class));
+    }
+
+    @Test
+    void rejectFieldOfWrongType() {
+        BinarySerializer.allowType(Item.class);
+        ByteBuf buf = Unpooled.buffer();
+        // OBJECT, 新类名, 三个字段按名称排序：count, name, values；count 写成字符串
+        buf.writeByte(21);
+        buf.writeByte(0);
+        byte[] name = Item.class.getName().getBytes();
+        buf.writeByte(name.length);
+        buf.writeBytes(name);
+        buf.writeByte(10);
+        buf.writeByte(1);
+        buf.writeByte('x');
+        assertThrows(RpcException.class, () -> serializer.deserialize(buf, Item.class));
+    }
+
+    @Test
+    void requireNoArgConstructor() {
+        BinarySerializer.allowType(NoDefault.class);
+        RpcException e = assertThrows(RpcException.class,
+                () -> serializer.deserialize(write(new NoDefault("a")), NoDefault.class));
+        assertTrue(e.getMessage().contains("no-arg constructor"), e.getMessage());
+    }
+
+    @Test
+    void exceptionNotAllowedBecomesRpcException() {
+        Object result = serializer.deserialize(write(new IllegalStateException("boom")), Object.class);
+        assertEquals(RpcException.class, result.getClass());
+        assertEquals("java.lang.IllegalStateException: boom", ((RpcException) result).getMessage());
+
+        Object allowed = serializer.deserialize(write(new RpcException("fail")), Object.class);
+        assertEquals(RpcException.class, allowed.getClass());
+        assertEquals("fail", ((RpcException) allowed).getMessage());
+    }
+
+    @Test
+    void rejectMalformedClassReference() {
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeByte(21);
+        buf.writeByte(3);
+        assertThrows(RpcException.class, () -> serializer.deserialize(buf, Object.class));
+    }
+}
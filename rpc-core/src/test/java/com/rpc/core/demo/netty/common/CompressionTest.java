@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.netty.common;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.CharsetUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author lw1243925457
+ */
+class CompressionTest {
+
+    private static final String TEXT = repeat("compressible rpc payload ", 400);
+
+    @BeforeEach
+    void setUp() {
+        TransportConfig.setCompressionThreshold(2048);
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransportConfig.setCompression(Compression.NONE);
+        TransportConfig.setCompressionThreshold(2048);
+    }
+
+    private static String repeat(String value, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 类似大列表序列化结果的数据：重复的字段名加随机的字段值，匹配位置分布在整个数据中
+     */
+    private static String largeBody(int length) {
+        Random random = new Random(length);
+        StringBuilder builder = new StringBuilder(length + 64);
+        builder.append('[');
+        while (builder.length() < length) {
+            builder.append("{\"id\":").append(random.nextInt(1_000_000))
+                    .append(",\"name\":\"order-").append(Long.toHexString(random.nextLong()))
+                    .append("\",\"userId\":").append(random.nextInt(1000)).append("},");
+        }
+        builder.append(']');
+        return builder.toString();
+    }
+
+    private static RpcProtocol message(String content) {
+        return new RpcProtocol(Unpooled.copiedBuffer(content, CharsetUtil.UTF_8));
+    }
+
+    private static ByteBuf encode(EmbeddedChannel channel, String content) {
+        channel.writeOutbound(message(content));
+        return channel.readOutbound();
+    }
+
+    private static Compression compressionOf(ByteBuf frame) {
+        return Compression.fromFlags(frame.getByte(frame.readerIndex() + FrameHeader.FLAGS_OFFSET));
+    }
+
+    /**
+     * 让 channel 收到一个声明了能解压的帧
+     */
+    private static void receiveFromPeer(EmbeddedChannel channel) {
+        ByteBuf frame = encode(new EmbeddedChannel(new RpcEncoder()), "hello");
+        channel.writeInbound(frame);
+        RpcProtocol received = channel.readInbound();
+        received.release();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = Compression.class, names = {"SNAPPY", "DEFLATE"})
+    void roundTrip(Compression compression) {
+        TransportConfig.setCompression(compression);
+        EmbeddedChannel sender = new EmbeddedChannel(new RpcDecoder(), new RpcEncoder());
+        receiveFromPeer(sender);
+
+        ByteBuf frame = encode(sender, TEXT);
+        assertEquals(compression, compressionOf(frame));
+        assertTrue(frame.readableBytes() < TEXT.length());
+
+        EmbeddedChannel receiver = new EmbeddedChannel(new RpcDecoder());
+        receiver.writeInbound(frame);
+        RpcProtocol received = receiver.readInbound();
+        assertEquals(TEXT, received.content().toString(CharsetUtil.UTF_8));
+        received.release();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = Compression.class, names = {"SNAPPY", "DEFLATE"})
+    void roundTripLargeBody(Compression compression) {
+        TransportConfig.setCompression(compression);
+        EmbeddedChannel sender = new EmbeddedChannel(new RpcDecoder(), new RpcEncoder());
+        receiveFromPeer(sender);
+        EmbeddedChannel receiver = new EmbeddedChannel(new RpcDecoder());
+
+        for (int length : new int[]{44 * 1024, 136 * 1024, 456 * 1024, 2300 * 1024}) {
+            String body = largeBody(length);
+            ByteBuf frame = encode(sender, body);
+            assertEquals(compression, compressionOf(frame));
+            assertTrue(frame.readableBytes() < body.length());
+
+            receiver.writeInbound(frame);
+            RpcProtocol received = receiver.readInbound();
+            assertEquals(body, received.content().toString(CharsetUtil.UTF_8));
+            received.release();
+        }
+    }
+
+    @Test
+    void rejectTruncatedSnappyBlock() {
+        ByteBuf raw = Unpooled.copiedBuffer(largeBody(100 * 1024), CharsetUtil.UTF_8);
+        ByteBuf compressed = Unpooled.buffer();
+        Compression.SNAPPY.compress(raw, compressed);
+        ByteBuf truncated = compressed.slice(0, compressed.readableBytes() - 10);
+
+        ByteBuf out = Unpooled.buffer();
+        assertThrows(CorruptedFrameException.class,
+                () -> Compression.SNAPPY.decompress(truncated, out, Integer.MAX_VALUE));
+        out.release();
+        raw.release();
+        compressed.release();
+    }
+
+    @Test
+    void notCompressedBeforePeerDeclares() {
+        TransportConfig.setCompression(Compression.SNAPPY);
+        EmbeddedChannel sender = new EmbeddedChannel(new RpcDecoder(), new RpcEncoder());
+
+        ByteBuf frame = encode(sender, TEXT);
+        assertEquals(Compression.NONE, compressionOf(frame));
+        frame.release();
+        assertNull(sender.attr(Compression.PEER_ACCEPTS).get());
+    }
+
+    @Test
+    void notCompressedWhenPeerDoesNotAccept() {
+        TransportConfig.setCompression(Compression.DEFLATE);
+        EmbeddedChannel sender = new EmbeddedChannel(new RpcDecoder(), new RpcEncoder());
+        sender.attr(Compression.PEER_ACCEPTS).set(Compression.SNAPPY.acceptFlag());
+
+        ByteBuf frame = encode(sender, TEXT);
+        assertEquals(Compression.NONE, compressionOf(frame));
+        frame.release();
+    }
+
+    @Test
+    void notCompressedBelowThreshold() {
+        TransportConfig.setCompression(Compression.SNAPPY);
+        TransportConfig.setCompressionThreshold(TEXT.length() + 1);
+        EmbeddedChannel sender = new EmbeddedChannel(new RpcDecoder(), new RpcEncoder());
+        receiveFromPeer(sender);
+
+        ByteBuf frame = encode(sender, TEXT);
+        assertEquals(Compression.NONE, compressionOf(frame));
+        frame.release();
+    }
+
+    @Test
+    void frameDeclaresAcceptedCompressions() {
+        ByteBuf frame = encode(new EmbeddedChannel(new RpcEncoder()), "hello");
+        byte flags = frame.getByte(frame.readerIndex() + FrameHeader.FLAGS_OFFSET);
+        assertEquals(Compression.ACCEPT_MASK, flags & Compression.ACCEPT_MASK);
+        frame.release();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = Compression.class, names = {"SNAPPY", "DEFLATE"})
+    void rejectDecompressedSizeOverLimit(Compression compression) {
+        // 超过一个 Snappy 块，原始长度的检查需要按所有块累计
+        String body = largeBody(100 * 1024);
+        ByteBuf raw = Unpooled.copiedBuffer(body, CharsetUtil.UTF_8);
+        ByteBuf compressed = Unpooled.buffer();
+        compression.compress(raw, compressed);
+
+        ByteBuf out = Unpooled.buffer();
+        assertThrows(CorruptedFrameException.class, () -> compression.decompress(compressed, out, body.length() - 1));
+        out.release();
+        raw.release();
+        compressed.release();
+    }
+
+    @Test
+    void rejectUnknownCompressionFlags() {
+        assertThrows(CorruptedFrameException.class, () -> Compression.fromFlags((byte) 0x03));
+    }
+}
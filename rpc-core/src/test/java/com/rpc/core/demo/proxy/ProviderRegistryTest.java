@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.core.demo.proxy;
+
+import com.rpc.core.demo.annotation.DispatchMode;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * @author lw1243925457
+ */
+class ProviderRegistryTest {
+
+    private static final String PREFIX = "test.Greeter:g:v#";
+
+    public static class GreeterV1 {
+        public String hello(String name) {
+            return "v1 " + name;
+        }
+
+        public String bye() {
+            return "v1 bye";
+        }
+    }
+
+    public static class GreeterV2 {
+        public String hello(String name) {
+            return "v2 " + name;
+        }
+
+        public String welcome() {
+            return "v2 welcome";
+        }
+    }
+
+    @Test
+    void reRegisterKeepsMethodIds() throws Throwable {
+        ProviderServiceManagement.register("test.Greeter", "g", "v", new GreeterV1(), DispatchMode.POOL);
+        Map<String, Integer> before = ProviderServiceManagement.getCatalogue();
+        int hello = before.get(PREFIX + "hello(java.lang.String)");
+        int bye = before.get(PREFIX + "bye()");
+
+        ProviderServiceManagement.register("test.Greeter", "g", "v", new GreeterV2(), DispatchMode.POOL);
+        Map<String, Integer> after = ProviderServiceManagement.getCatalogue();
+
+        // 签名相同的方法沿用原来的ID，调用新的实现
+        assertEquals(hello, after.get(PREFIX + "hello(java.lang.String)"));
+        assertEquals("v2 a", ProviderServiceManagement.getInvoker(hello).invoke(new Object[]{"a"}));
+        // 删除的方法ID置空，不会复用给其他方法
+        assertFalse(after.containsKey(PREFIX + "bye()"));
+        assertNull(ProviderServiceManagement.getInvoker(bye));
+        int welcome = after.get(PREFIX + "welcome()");
+        assertNotEquals(bye, welcome);
+        assertSame(GreeterV2.class, ProviderServiceManagement.getInvoker(welcome).getMethod().getDeclaringClass());
+    }
+}
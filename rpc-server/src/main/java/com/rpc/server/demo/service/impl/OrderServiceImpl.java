@@ -1,5 +1,6 @@
 package com.rpc.server.demo.service.impl;
 
+import com.rpc.core.demo.annotation.DispatchMode;
 import com.rpc.core.demo.annotation.ProviderService;
 import com.rpc.core.demo.exception.CustomException;
 import com.rpc.demo.model.Order;
@@ -8,7 +9,7 @@ import com.rpc.demo.service.OrderService;
 /**
  * @author lw
  */
-@ProviderService(service = "com.rpc.demo.service.OrderService")
+@ProviderService(service = "com.rpc.demo.service.OrderService", dispatch = DispatchMode.THREAD_PER_REQUEST)
 public class OrderServiceImpl implements OrderService {
 
     @Override
@@ -7,7 +7,7 @@ import com.rpc.demo.service.UserService;
 /**
  * @author lw
  */
-@ProviderService(service = "com.rpc.demo.service.UserService", weight = 2)
+@ProviderService(service = "com.rpc.demo.service.UserService", weight = 2, initialConcurrency = 20)
 public class UserServiceImpl implements UserService {
 
     @Override
@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.rpc.stub.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 客户端存根生成器：处理 com.rpc.core.demo.annotation.GenerateStubs，为其中列出的每个服务接口生成 接口名_RpcStub
+ *
+ * 存根继承 com.rpc.core.demo.proxy.RpcStub 并实现服务接口，每个方法直接按下标调用预先生成的调用元数据，
+ * 类加载时查找一次接口方法，调用时不经过反射和 InvocationHandler
+ * 接口或方法带类型参数时不生成存根，运行时回退到 ByteBuddy 代理
+ *
+ * 处理器不依赖 rpc-core，注解和基类都按名称引用
+ *
+ * @author lw1243925457
+ */
+@SupportedAnnotationTypes(RpcStubProcessor.ANNOTATION)
+public class RpcStubProcessor extends AbstractProcessor {
+
+    static final String ANNOTATION = "com.rpc.core.demo.annotation.GenerateStubs";
+    static final String STUB_BASE = "com.rpc.core.demo.proxy.RpcStub";
+    static final String HANDLER = "com.rpc.core.demo.proxy.RpcInvocationHandler";
+    static final String SUFFIX = "_RpcStub";
+
+    private Elements elements;
+    private Types types;
+    private Messager messager;
+
+    /**
+     * 已经生成过的接口，多个类列出同一个接口时只生成一次
+     */
+    private final Set<String> generated = new HashSet<>();
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+        this.messager = processingEnv.getMessager();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation: annotations) {
+            for (Element element: roundEnv.getElementsAnnotatedWith(annotation)) {
+                for (TypeElement service: listedServices(element)) {
+                    if (generated.add(service.getQualifiedName().toString())) {
+                        generate(service, element);
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 读取注解 value 中列出的接口
+     * @param element 加了注解的类
+     * @return service interfaces
+     */
+    private List<TypeElement> listedServices(Element element) {
+        List<TypeElement> services = new ArrayList<>();
+        for (AnnotationMirror mirror: element.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+            if (!annotationType.getQualifiedName().contentEquals(ANNOTATION)) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry:
+                    mirror.getElementValues().entrySet()) {
+                if (!entry.getKey().getSimpleName().contentEquals("value")) {
+                    continue;
+                }
+                for (Object value: asList(entry.getValue().getValue())) {
+                    TypeMirror type = (TypeMirror) ((AnnotationValue) value).getValue();
+                    if (type.getKind() == TypeKind.DECLARED) {
+                        services.add((TypeElement) ((DeclaredType) type).asElement());
+                    }
+                }
+            }
+        }
+        return services;
+    }
+
+    /**
+     * value 只写一个接口时也可能不是数组形式
+     */
+    private static List<?> asList(Object value) {
+        if (value instanceof List) {
+            return (List<?>) value;
+        }
+        List<Object> list = new ArrayList<>(1);
+        list.add(value);
+        return list;
+    }
+
+    private void generate(TypeElement service, Element origin) {
+        if (service.getKind() != ElementKind.INTERFACE) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Stub can only be generated for interface: "
+                    + service.getQualifiedName(), origin);
+            return;
+        }
+        if (!service.getTypeParameters().isEmpty()) {
+            messager.printMessage(Diagnostic.Kind.WARNING, "Skip stub for generic interface: "
+                    + service.getQualifiedName(), origin);
+            return;
+        }
+
+        List<ExecutableElement> methods = stubMethods(service);
+        for (ExecutableElement method: methods) {
+            if (!method.getTypeParameters().isEmpty()) {
+                messager.printMessage(Diagnostic.Kind.WARNING, "Skip stub for interface with generic method: "
+                        + service.getQualifiedName() + "#" + method.getSimpleName(), origin);
+                return;
+            }
+        }
+
+        PackageElement packageElement = elements.getPackageOf(service);
+        String packageName = packageElement.getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(service).toString();
+        String stubName = (packageElement.isUnnamed() ? binaryName : binaryName.substring(packageName.length() + 1))
+                + SUFFIX;
+        String qualifiedStubName = packageElement.isUnnamed() ? stubName : packageName + "." + stubName;
+
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedStubName, service, origin);
+            try (Writer writer = file.openWriter()) {
+                writer.write(source(service, methods, packageElement.isUnnamed() ? null : packageName, stubName));
+            }
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Stub generate failed: " + qualifiedStubName
+                    + ", " + e.getMessage(), origin);
+        }
+    }
+
+    /**
+     * 接口中需要实现的方法：包括父接口的抽象方法，default 和 static 方法不处理，签名相同的只保留一个
+     * @param service service interface
+     * @return methods
+     */
+    private List<ExecutableElement> stubMethods(TypeElement service) {
+        Map<String, ExecutableElement> methods = new LinkedHashMap<>();
+        for (ExecutableElement method: ElementFilter.methodsIn(elements.getAllMembers(service))) {
+            Element owner = method.getEnclosingElement();
+            if (!method.getModifiers().contains(Modifier.ABSTRACT) || owner.getKind() != ElementKind.INTERFACE) {
+                continue;
+            }
+            StringBuilder signature = new StringBuilder(method.getSimpleName());
+            for (VariableElement parameter: method.getParameters()) {
+                signature.append(',').append(types.erasure(parameter.asType()));
+            }
+            methods.putIfAbsent(signature.toString(), method);
+        }
+        return new ArrayList<>(methods.values());
+    }
+
+    private String source(TypeElement service, List<ExecutableElement> methods, String packageName, String stubName) {
+        String serviceName = service.getQualifiedName().toString();
+        DeclaredType serviceType = (DeclaredType) service.asType();
+
+        StringBuilder out = new StringBuilder();
+        // 生成的源码只用 ASCII 字符，不受编译时源码编码设置影响
+        out.append("// Generated by rpc-stub-processor from ").append(serviceName).append(", do not edit\n");
+        if (packageName != null) {
+            out.append("package ").append(packageName).append(";\n\n");
+        }
+        out.append("@SuppressWarnings(\"unchecked\")\n");
+        out.append("public final class ").append(stubName).append(" extends ").append(STUB_BASE)
+                .append(" implements ").append(serviceName).append(" {\n\n");
+
+        out.append("    private static final java.lang.reflect.Method[] METHODS = {\n");
+        for (ExecutableElement method: methods) {
+            out.append("        method(").append(serviceName).append(".class, \"").append(method.getSimpleName())
+                    .append('"');
+            for (VariableElement parameter: method.getParameters()) {
+                out.append(", ").append(types.erasure(parameter.asType())).append(".class");
+            }
+            out.append("),\n");
+        }
+        out.append("    };\n\n");
+
+        out.append("    public ").append(stubName).append("(").append(HANDLER).append(" handler) {\n");
+        out.append("        super(handler, ").append(serviceName).append(".class, METHODS);\n");
+        out.append("    }\n");
+
+        for (int index = 0; index < methods.size(); index++) {
+            ExecutableElement method = methods.get(index);
+            ExecutableType methodType = (ExecutableType) types.asMemberOf(serviceType, method);
+            List<? extends VariableElement> parameters = method.getParameters();
+            List<? extends TypeMirror> parameterTypes = methodType.getParameterTypes();
+            TypeMirror returnType = methodType.getReturnType();
+
+            out.append("\n    @Override\n");
+            out.append("    public ").append(returnType).append(' ').append(method.getSimpleName()).append('(');
+            for (int i = 0; i < parameters.size(); i++) {
+                String type = parameterTypes.get(i).toString();
+                if (method.isVarArgs() && i == parameters.size() - 1 && type.endsWith("[]")) {
+                    type = type.substring(0, type.length() - 2) + "...";
+                }
+                out.append(i == 0 ? "" : ", ").append(type).append(' ').append(parameters.get(i).getSimpleName());
+            }
+            out.append(") {\n");
+
+            // 基本类型的返回值不能为 null，调用 invokeNonNull 检查后再拆箱
+            boolean primitive = returnType.getKind().isPrimitive();
+            StringBuilder call = new StringBuilder(primitive ? "invokeNonNull(" : "invoke(").append(index).append(", ");
+            if (parameters.isEmpty()) {
+                call.append("NO_ARGS");
+            } else {
+                call.append("new Object[]{");
+                for (int i = 0; i < parameters.size(); i++) {
+                    call.append(i == 0 ? "" : ", ").append(parameters.get(i).getSimpleName());
+                }
+                call.append('}');
+            }
+            call.append(')');
+
+            if (returnType.getKind() == TypeKind.VOID) {
+                out.append("        ").append(call).append(";\n");
+            } else if (primitive) {
+                out.append("        return (").append(types.boxedClass((PrimitiveType) returnType).getQualifiedName())
+                        .append(") ").append(call).append(";\n");
+            } else {
+                out.append("        return (").append(returnType).append(") ").append(call).append(";\n");
+            }
+            out.append("    }\n");
+        }
+        out.append("}\n");
+        return out.toString();
+    }
+}